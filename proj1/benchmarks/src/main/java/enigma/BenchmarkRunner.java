@@ -0,0 +1,47 @@
+package enigma;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/** Runs the JMH benchmarks of the enigma package.  Usage:
+ *      java -jar target/benchmarks.jar [JMH OPTIONS]
+ *  takes the usual JMH options (-h lists them), but unless told
+ *  otherwise with -rf and -rff, writes its results as JSON to
+ *  target/jmh-result.json, so that runs can be compared over time.
+ *  @author josephhayes
+ */
+public class BenchmarkRunner {
+
+    /** Run the benchmarks selected by ARGS (see above). */
+    public static void main(String... args)
+        throws CommandLineOptionException, IOException, RunnerException {
+        CommandLineOptions cmd = new CommandLineOptions(args);
+        if (cmd.shouldHelp()) {
+            cmd.showHelp();
+            return;
+        }
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(cmd);
+        if (!cmd.getResultFormat().hasValue()) {
+            options.resultFormat(ResultFormatType.JSON);
+        }
+        if (!cmd.getResult().hasValue()) {
+            options.result(DEFAULT_RESULT);
+        }
+        Runner runner = new Runner(options.build());
+        if (cmd.shouldList()) {
+            runner.list();
+        } else {
+            runner.run();
+        }
+    }
+
+    /** File the results are written to unless -rff is given. */
+    private static final String DEFAULT_RESULT = "target/jmh-result.json";
+}
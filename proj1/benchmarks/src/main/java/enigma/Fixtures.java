@@ -0,0 +1,76 @@
+package enigma;
+
+import java.util.Random;
+
+/** Alphabets, machines and inputs shared by the JMH benchmarks.  Everything
+ *  is generated from fixed seeds, so that every run measures the same
+ *  work.
+ *  @author josephhayes
+ */
+class Fixtures {
+
+    /** Return an alphabet of SIZE characters: A-Z for 26, all bytes for
+     *  256, and otherwise the SIZE characters starting at '!'. */
+    static Alphabet alphabet(int size) {
+        if (size == UPPER) {
+            return new CharacterRange('A', 'Z');
+        } else if (size == ByteAlphabet.SIZE) {
+            return new ByteAlphabet();
+        }
+        StringBuilder symbols = new StringBuilder();
+        for (char ch = FIRST; symbols.length() < size; ch += 1) {
+            symbols.append(ch);
+        }
+        return new SymbolAlphabet(symbols.toString());
+    }
+
+    /** Return a random machine with alphabet ALPHABET and NUMROTORS
+     *  slots, with all but the reflector and one fixed rotor moving (or
+     *  just one moving rotor for three slots), and its rotors inserted. */
+    static Machine machine(Alphabet alphabet, int numRotors) {
+        int pawls = Math.max(1, numRotors - 2);
+        Machine result = Benchmark.randomMachine(alphabet, numRotors, pawls,
+                                                 new Random(SEED));
+        result.insertRotors(result.defaultRotors());
+        return result;
+    }
+
+    /** Return a random permutation of ALPHABET. */
+    static Permutation permutation(Alphabet alphabet) {
+        return new Permutation(alphabet,
+                Benchmark.shuffled(alphabet.size(), new Random(SEED)));
+    }
+
+    /** Return LENGTH random indices into an alphabet of N characters. */
+    static int[] indices(int n, int length) {
+        Random random = new Random(SEED);
+        int[] result = new int[length];
+        for (int i = 0; i < length; i += 1) {
+            result[i] = random.nextInt(n);
+        }
+        return result;
+    }
+
+    /** Return a message of LENGTH random characters of ALPHABET, none of
+     *  them whitespace (which conversion would skip). */
+    static String message(Alphabet alphabet, int length) {
+        Random random = new Random(SEED);
+        StringBuilder result = new StringBuilder(length);
+        while (result.length() < length) {
+            char ch = alphabet.toChar(random.nextInt(alphabet.size()));
+            if (!Character.isWhitespace(ch)) {
+                result.append(ch);
+            }
+        }
+        return result.toString();
+    }
+
+    /** Seed for all generated data. */
+    static final long SEED = 61;
+
+    /** Size of the alphabet A-Z. */
+    private static final int UPPER = 26;
+
+    /** First character of generated alphabets. */
+    private static final char FIRST = '!';
+}
@@ -0,0 +1,77 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Time Machine.convert on single indices and on whole messages, for
+ *  several sizes of alphabet and numbers of rotors.  Scores are in
+ *  nanoseconds per character.
+ *  @author josephhayes
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MachineBenchmark {
+
+    /** Number of characters in the alphabet. */
+    @Param({"26", "64", "256"})
+    public int alphabetSize;
+
+    /** Number of rotor slots. */
+    @Param({"3", "5", "8"})
+    public int numRotors;
+
+    /** Set up a random machine and inputs for it. */
+    @Setup
+    public void setUp() {
+        Alphabet alphabet = Fixtures.alphabet(alphabetSize);
+        _machine = Fixtures.machine(alphabet, numRotors);
+        _inputs = Fixtures.indices(alphabetSize, MESSAGE);
+        _message = Fixtures.message(alphabet, MESSAGE);
+    }
+
+    /** Convert each input index in turn, returning a value that depends
+     *  on all the results. */
+    @Benchmark
+    @OperationsPerInvocation(MESSAGE)
+    public int convertInt() {
+        int result = 0;
+        for (int c : _inputs) {
+            result += _machine.convert(c);
+        }
+        return result;
+    }
+
+    /** Convert a message, grouping the result in fives. */
+    @Benchmark
+    @OperationsPerInvocation(MESSAGE)
+    public String convertString() {
+        return _machine.convert(_message);
+    }
+
+    /** Number of characters converted per invocation. */
+    private static final int MESSAGE = 1024;
+
+    /** The machine timed.  Its settings carry on from one invocation to
+     *  the next. */
+    private Machine _machine;
+    /** Indices to convert. */
+    private int[] _inputs;
+    /** Message to convert. */
+    private String _message;
+}
@@ -0,0 +1,81 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Time Main from start to finish on each of the inputs in
+ *  testing/correct that it processes successfully: reading the
+ *  configuration, reading and converting the input and writing the
+ *  output file.  (reduced is left out: its configuration swallows a rotor,
+ *  so Main stops without converting anything.)  The directory of inputs is
+ *  ../testing/correct, relative to the directory the benchmarks are run
+ *  in, unless the property enigma.testing gives another.  Scores are in
+ *  microseconds per run.
+ *  @author josephhayes
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MainBenchmark {
+
+    /** Name of the input, without its .inp suffix. */
+    @Param({"carroll1", "format1", "format2", "gitgood", "multi1",
+            "riptide", "step1", "step2", "trivial", "trivial1"})
+    public String input;
+
+    /** Find the input and its configuration, and make an output file. */
+    @Setup
+    public void setUp() throws IOException {
+        File dir = new File(System.getProperty("enigma.testing",
+                                               DEFAULT_DIRECTORY));
+        File in = new File(dir, input + ".inp");
+        if (!in.isFile()) {
+            throw new IOException("cannot find " + in
+                                  + "; set -Denigma.testing=DIRECTORY");
+        }
+        File config = new File(dir, input + ".conf");
+        if (!config.isFile()) {
+            config = new File(dir, "default.conf");
+        }
+        _output = File.createTempFile("enigma", ".out");
+        _args = new String[] { config.getPath(), in.getPath(),
+                               _output.getPath() };
+    }
+
+    /** Remove the output file. */
+    @TearDown
+    public void tearDown() {
+        _output.delete();
+    }
+
+    /** Run Main on the input, in this JVM. */
+    @Benchmark
+    public void process() {
+        Main.run(_args);
+    }
+
+    /** Directory of inputs used unless enigma.testing is set. */
+    private static final String DEFAULT_DIRECTORY = "../testing/correct";
+
+    /** Arguments to Main. */
+    private String[] _args;
+    /** The output file. */
+    private File _output;
+}
@@ -0,0 +1,72 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Time Permutation.permute and Permutation.invert on indices, for
+ *  several sizes of alphabet.  Scores are in nanoseconds per call.
+ *  @author josephhayes
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PermutationBenchmark {
+
+    /** Number of characters in the alphabet. */
+    @Param({"26", "64", "256"})
+    public int alphabetSize;
+
+    /** Set up a random permutation and inputs for it. */
+    @Setup
+    public void setUp() {
+        _perm = Fixtures.permutation(Fixtures.alphabet(alphabetSize));
+        _inputs = Fixtures.indices(alphabetSize, INPUTS);
+    }
+
+    /** Permute each input, returning a value that depends on all the
+     *  results. */
+    @Benchmark
+    @OperationsPerInvocation(INPUTS)
+    public int permute() {
+        int result = 0;
+        for (int c : _inputs) {
+            result += _perm.permute(c);
+        }
+        return result;
+    }
+
+    /** Invert each input, returning a value that depends on all the
+     *  results. */
+    @Benchmark
+    @OperationsPerInvocation(INPUTS)
+    public int invert() {
+        int result = 0;
+        for (int c : _inputs) {
+            result += _perm.invert(c);
+        }
+        return result;
+    }
+
+    /** Number of calls timed per invocation. */
+    private static final int INPUTS = 1024;
+
+    /** The permutation timed. */
+    private Permutation _perm;
+    /** Indices to permute. */
+    private int[] _inputs;
+}
@@ -0,0 +1,76 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Time Rotor.convertForward and Rotor.convertBackward for a moving rotor
+ *  at a setting other than 0, for several sizes of alphabet.  Scores are
+ *  in nanoseconds per call.
+ *  @author josephhayes
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RotorBenchmark {
+
+    /** Number of characters in the alphabet. */
+    @Param({"26", "64", "256"})
+    public int alphabetSize;
+
+    /** Set up a random rotor and inputs for it. */
+    @Setup
+    public void setUp() {
+        Alphabet alphabet = Fixtures.alphabet(alphabetSize);
+        _rotor = new MovingRotor("R", Fixtures.permutation(alphabet),
+                                 "M" + alphabet.toChar(0));
+        _rotor.set(alphabetSize / 3);
+        _inputs = Fixtures.indices(alphabetSize, INPUTS);
+    }
+
+    /** Convert each input forward, returning a value that depends on
+     *  all the results. */
+    @Benchmark
+    @OperationsPerInvocation(INPUTS)
+    public int convertForward() {
+        int result = 0;
+        for (int c : _inputs) {
+            result += _rotor.convertForward(c);
+        }
+        return result;
+    }
+
+    /** Convert each input backward, returning a value that depends on
+     *  all the results. */
+    @Benchmark
+    @OperationsPerInvocation(INPUTS)
+    public int convertBackward() {
+        int result = 0;
+        for (int c : _inputs) {
+            result += _rotor.convertBackward(c);
+        }
+        return result;
+    }
+
+    /** Number of calls timed per invocation. */
+    private static final int INPUTS = 1024;
+
+    /** The rotor timed. */
+    private Rotor _rotor;
+    /** Indices to convert. */
+    private int[] _inputs;
+}
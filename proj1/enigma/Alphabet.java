@@ -20,4 +20,11 @@ abstract class Alphabet {
      *  the alphabet. This is the inverse of toChar(). */
     abstract int toInt(char ch);
 
+    /** Returns the index of CH if it is in the alphabet, and otherwise -1.
+     *  Unlike toInt, this never throws, so callers that must test each
+     *  character anyway need look it up only once. */
+    int indexOf(char ch) {
+        return contains(ch) ? toInt(ch) : -1;
+    }
+
 }
@@ -0,0 +1,240 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import static enigma.EnigmaException.*;
+
+/** Converts many independent messages at once, each with its own key,
+ *  using the configuration of a Machine.  The state of the machines is
+ *  kept as arrays indexed by message: for each slot, the offset in shared
+ *  wiring tables of the current setting of the rotor in that slot of
+ *  every message.  Each step of conversion then runs short loops over all
+ *  the messages doing the same table lookups, with no branches, and
+ *  adding a message costs only a few table lookups.
+ *  @author josephhayes
+ */
+class BatchMachine {
+
+    /** A batch of up to CAPACITY messages to be converted with the
+     *  configuration of MACHINE. */
+    BatchMachine(Machine machine, int capacity) {
+        _machine = machine.copy();
+        _alphabet = machine.alphabet();
+        _n = _alphabet.size();
+        _numSlots = machine.numRotors();
+        _capacity = capacity;
+        _offset = new int[_numSlots][capacity];
+        _base = new int[_numSlots][capacity];
+        _rotates = new int[_numSlots][capacity];
+        _plug = new int[capacity * _n];
+        _signal = new int[capacity];
+        _active = new int[capacity];
+        _forward = new int[0];
+        _backward = new int[0];
+        _notches = new int[0];
+        for (Rotor rotor : machine.rotors()) {
+            _rotorsByName.put(rotor.name(), rotor);
+        }
+    }
+
+    /** Return the number of messages I hold. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the most messages I can hold. */
+    int capacity() {
+        return _capacity;
+    }
+
+    /** Remove all my messages. */
+    void clear() {
+        _size = 0;
+    }
+
+    /** Add a message with key KEY, returning its number.  The key must
+     *  name a rotor for every slot of my configuration and give each a
+     *  setting. */
+    int add(Candidate key) {
+        if (_size == _capacity) {
+            throw error("batch is full");
+        }
+        String[] names = key.rotors();
+        String setting = key.setting();
+        if (names.length != _numSlots || setting.length() != _numSlots - 1) {
+            throw error("key %s does not fill every slot", key);
+        }
+        int m = _size, nn = _n * _n;
+        for (int i = 0; i < _numSlots; i += 1) {
+            Rotor rotor = _rotorsByName.get(names[i]);
+            if (rotor == null) {
+                throw error("no rotor named %s", names[i]);
+            }
+            int posn = i == 0 ? 0 : _alphabet.toInt(setting.charAt(i - 1));
+            _base[i][m] = index(rotor) * nn;
+            _offset[i][m] = _base[i][m] + posn * _n;
+            _rotates[i][m] = rotor.rotates() ? 1 : 0;
+        }
+        Permutation plugboard =
+            key.cycles().isEmpty() ? null
+            : new Permutation(key.cycles(), _alphabet);
+        for (int c = 0; c < _n; c += 1) {
+            _plug[m * _n + c] = plugboard == null ? c : plugboard.permute(c);
+        }
+        _size += 1;
+        return m;
+    }
+
+    /** Return the number of ROTOR in my tables, adding its wirings and
+     *  notches to them if it is not there yet. */
+    private int index(Rotor rotor) {
+        Integer result = _rotorIndex.get(rotor);
+        if (result == null) {
+            result = _rotorIndex.size();
+            int[][] wiring = _machine.wiring(rotor);
+            int nn = _n * _n, base = result * nn;
+            _forward = Arrays.copyOf(_forward, base + nn);
+            _backward = Arrays.copyOf(_backward, base + nn);
+            _notches = Arrays.copyOf(_notches, base + nn);
+            System.arraycopy(wiring[0], 0, _forward, base, nn);
+            System.arraycopy(wiring[1], 0, _backward, base, nn);
+            for (int s = 0; s < _n; s += 1) {
+                _notches[base + s * _n] = rotor.atNotch(s) ? 1 : 0;
+            }
+            _rotorIndex.put(rotor, result);
+        }
+        return result;
+    }
+
+    /** Return the current settings of the rotors of message M, as for
+     *  Machine.setting. */
+    String setting(int m) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 1; i < _numSlots; i += 1) {
+            int posn = (_offset[i][m] - _base[i][m]) / _n;
+            result.append(_alphabet.toChar(posn));
+        }
+        return result.toString();
+    }
+
+    /** Convert MESSAGES in place, where MESSAGES[M] holds the alphabet
+     *  indices of message M.  Each message is converted as by
+     *  Machine.convert(int[], int[], int) with its own key, and its
+     *  rotors are left advanced past it. */
+    void convert(int[][] messages) {
+        if (messages.length != _size) {
+            throw error("expected %d messages, got %d", _size,
+                        messages.length);
+        }
+        int longest = 0, shortest = Integer.MAX_VALUE;
+        for (int[] msg : messages) {
+            longest = Math.max(longest, msg.length);
+            shortest = Math.min(shortest, msg.length);
+        }
+        Arrays.fill(_active, 0, _size, 1);
+        int n = _n;
+        int[] plug = _plug, signal = _signal, active = _active;
+        for (int t = 0; t < longest; t += 1) {
+            if (t >= shortest) {
+                for (int m = 0; m < _size; m += 1) {
+                    active[m] = t < messages[m].length ? 1 : 0;
+                }
+            }
+            step();
+            for (int m = 0; m < _size; m += 1) {
+                signal[m] = active[m] == 0 ? 0
+                    : plug[m * n + messages[m][t]];
+            }
+            scramble();
+            for (int m = 0; m < _size; m += 1) {
+                if (active[m] != 0) {
+                    messages[m][t] = plug[m * n + signal[m]];
+                }
+            }
+        }
+    }
+
+    /** Advance the rotors of each active message as Machine does for one
+     *  character. */
+    private void step() {
+        int n = _n, nn = n * n, size = _size, last = _numSlots - 1;
+        int[] notches = _notches, active = _active;
+        for (int i = last; i > 0; i -= 1) {
+            int[] offset = _offset[i], left = _offset[i - 1];
+            int[] base = _base[i - 1], rotates = _rotates[i - 1];
+            for (int m = 0; m < size; m += 1) {
+                int carry = notches[offset[m]] & rotates[m] & active[m];
+                int p = left[m] + carry * n;
+                left[m] = p == base[m] + nn ? base[m] : p;
+            }
+        }
+        int[] offset = _offset[last];
+        int[] base = _base[last], rotates = _rotates[last];
+        for (int m = 0; m < size; m += 1) {
+            int p = offset[m] + (rotates[m] & active[m]) * n;
+            offset[m] = p == base[m] + nn ? base[m] : p;
+        }
+    }
+
+    /** Pass _signal through the rotors of each message, from the rightmost
+     *  rotor to the reflector and back. */
+    private void scramble() {
+        int size = _size, last = _numSlots - 1;
+        int[] signal = _signal, forward = _forward, backward = _backward;
+        for (int i = last; i >= 0; i -= 1) {
+            int[] offset = _offset[i];
+            for (int m = 0; m < size; m += 1) {
+                signal[m] = forward[offset[m] + signal[m]];
+            }
+        }
+        for (int i = 1; i <= last; i += 1) {
+            int[] offset = _offset[i];
+            for (int m = 0; m < size; m += 1) {
+                signal[m] = backward[offset[m] + signal[m]];
+            }
+        }
+    }
+
+    /** Machine used to build tables. */
+    private final Machine _machine;
+    /** The alphabet of my machine. */
+    private final Alphabet _alphabet;
+    /** Size of the alphabet. */
+    private final int _n;
+    /** Number of rotor slots, including the reflector's. */
+    private final int _numSlots;
+    /** Most messages I can hold. */
+    private final int _capacity;
+    /** Number of messages I hold. */
+    private int _size;
+    /** _offset[I][M] is the offset in _forward, _backward and _notches of
+     *  the entries for the current setting of the rotor in slot I of
+     *  message M. */
+    private final int[][] _offset;
+    /** _base[I][M] is the offset of the entries for setting 0 of the
+     *  rotor in slot I of message M. */
+    private final int[][] _base;
+    /** _rotates[I][M] is 1 if the rotor in slot I of message M rotates,
+     *  and 0 otherwise. */
+    private final int[][] _rotates;
+    /** Entry M * size + C is the plugboard conversion of C for message M. */
+    private final int[] _plug;
+    /** The characters being converted, by message. */
+    private final int[] _signal;
+    /** 1 for messages with a character at the current step, else 0. */
+    private final int[] _active;
+    /** Forward conversion tables of all my rotors, as for Machine.wiring,
+     *  one after another. */
+    private int[] _forward;
+    /** Backward conversion tables of all my rotors, laid out as
+     *  _forward. */
+    private int[] _backward;
+    /** Laid out as _forward: the entry for each rotor and setting S
+     *  (at column 0) is 1 if the rotor has a notch at S, and others 0. */
+    private int[] _notches;
+    /** Available rotors, by name. */
+    private final HashMap<String, Rotor> _rotorsByName = new HashMap<>();
+    /** Numbers of the rotors in my tables. */
+    private final HashMap<Rotor, Integer> _rotorIndex = new HashMap<>();
+}
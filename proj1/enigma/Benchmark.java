@@ -0,0 +1,243 @@
+package enigma;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Random;
+
+import static enigma.EnigmaException.*;
+
+/** Timing runs for the enigma package.  Usage:
+ *      java enigma.Benchmark CONFIG [MEGACHARS]
+ *  converts MEGACHARS million random characters (default 32) with the
+ *  rotors of configuration file CONFIG, first sequentially and then with
+ *  a ParallelConverter using 1, 2, 4, ... threads up to the number of
+ *  available processors, and reports the rates and speedups.  The
+ *  sequential rate is compared with that of converting as many random
+ *  bytes with a binary machine of the same shape.  It then
+ *  converts a batch of short messages with random settings, one at a time
+ *  and then together with a BatchMachine.
+ *  @author josephhayes
+ */
+public class Benchmark {
+
+    /** Run the benchmarks described above, as specified by ARGS. */
+    public static void main(String... args) {
+        try {
+            if (args.length < 1 || args.length > 2) {
+                throw error("Usage: java enigma.Benchmark CONFIG [MEGACHARS]");
+            }
+            int size = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+            new Benchmark(Main.readMachine(args[0]), size << 20).run();
+        } catch (EnigmaException | NumberFormatException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** A benchmark that converts SIZE random characters with MACHINE,
+     *  after inserting the first rotors it has of each kind. */
+    Benchmark(Machine machine, int size) {
+        _machine = machine;
+        _machine.insertRotors(machine.defaultRotors());
+        _text = randomText(machine.alphabet(), size);
+    }
+
+    /** Return SIZE random characters of ALPHABET in lines of 60. */
+    static String randomText(Alphabet alphabet, int size) {
+        Random random = new Random(SEED);
+        StringBuilder result = new StringBuilder(size + size / LINE);
+        for (int i = 1; i <= size; i += 1) {
+            result.append(alphabet.toChar(random.nextInt(alphabet.size())));
+            if (i % LINE == 0) {
+                result.append('\n');
+            }
+        }
+        return result.toString();
+    }
+
+    /** Time sequential conversion and then parallel conversion with
+     *  increasing numbers of threads. */
+    void run() {
+        double sequential = rate(() -> {
+            Machine machine = _machine.copy();
+            StringBuilder out = new StringBuilder(_text.length() * 6 / 5);
+            machine.convert(_text, 0, _text.length(), 0, out);
+        });
+        report("sequential", sequential, sequential);
+        runBinary(sequential);
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        double single = 0;
+        for (int threads = 1; threads <= cores; threads *= 2) {
+            ParallelConverter converter = new ParallelConverter(threads);
+            double rate = rate(() -> {
+                StringBuilder out = new StringBuilder(_text.length() * 6 / 5);
+                converter.convert(_machine.copy(), _text, 0, out);
+            });
+            converter.shutdown();
+            if (threads == 1) {
+                single = rate;
+            }
+            report(threads + " thread(s)", rate, single);
+        }
+        runBatch();
+    }
+
+    /** Time the conversion of as many random bytes as there are
+     *  characters in _text, in place in direct buffers, by a machine with
+     *  a ByteAlphabet and as many slots and pawls as mine, and compare
+     *  the rate with that of the text path, BASE. */
+    void runBinary(double base) {
+        Random random = new Random(SEED);
+        Machine machine = byteMachine(_machine.numRotors(),
+                                      _machine.numPawls(), random);
+        machine.insertRotors(machine.defaultRotors());
+        ByteBuffer data = ByteBuffer.allocateDirect(_text.length());
+        while (data.hasRemaining()) {
+            data.put((byte) random.nextInt());
+        }
+        double rate = rate(() -> {
+            data.clear();
+            machine.copy().convertBinary(data, data);
+        });
+        report("binary", rate, base);
+    }
+
+    /** Return a machine with a ByteAlphabet, NUMROTORS slots and PAWLS
+     *  pawls, whose available rotors are one random rotor of each kind
+     *  needed to fill the slots, chosen with RANDOM. */
+    static Machine byteMachine(int numRotors, int pawls, Random random) {
+        return randomMachine(new ByteAlphabet(), numRotors, pawls, random);
+    }
+
+    /** Return a machine with alphabet ALPHABET, NUMROTORS slots and PAWLS
+     *  pawls, whose available rotors are one random rotor of each kind
+     *  needed to fill the slots, chosen with RANDOM. */
+    static Machine randomMachine(Alphabet alphabet, int numRotors, int pawls,
+                                 Random random) {
+        int n = alphabet.size();
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        int[] pairs = shuffled(n, random);
+        int[] reflection = new int[n];
+        for (int i = 0; i < n; i += 1) {
+            reflection[i] = i;
+        }
+        for (int i = 0; i + 1 < n; i += 2) {
+            reflection[pairs[i]] = pairs[i + 1];
+            reflection[pairs[i + 1]] = pairs[i];
+        }
+        rotors.add(new Reflector("R", new Permutation(alphabet,
+                                                      reflection)));
+        for (int k = 1; k < numRotors; k += 1) {
+            Permutation perm = new Permutation(alphabet, shuffled(n, random));
+            if (k < numRotors - pawls) {
+                rotors.add(new FixedRotor("F" + k, perm));
+            } else {
+                rotors.add(new MovingRotor("M" + k, perm,
+                        "M" + alphabet.toChar(random.nextInt(n))));
+            }
+        }
+        return new Machine(alphabet, numRotors, pawls, rotors);
+    }
+
+    /** Return a random ordering of 0 .. N-1, chosen with RANDOM. */
+    static int[] shuffled(int n, Random random) {
+        int[] result = new int[n];
+        for (int i = 0; i < n; i += 1) {
+            int j = random.nextInt(i + 1);
+            result[i] = result[j];
+            result[j] = i;
+        }
+        return result;
+    }
+
+    /** Time the conversion of BATCH messages of MESSAGE characters each,
+     *  with random settings, one by one and by a BatchMachine. */
+    void runBatch() {
+        Random random = new Random(SEED);
+        int n = _machine.alphabet().size();
+        String[] rotors = _machine.defaultRotors();
+        Candidate[] keys = new Candidate[BATCH];
+        int[][] messages = new int[BATCH][MESSAGE];
+        for (int m = 0; m < BATCH; m += 1) {
+            StringBuilder setting = new StringBuilder();
+            for (int i = 1; i < rotors.length; i += 1) {
+                setting.append(_machine.alphabet().toChar(random.nextInt(n)));
+            }
+            keys[m] = new Candidate(rotors, setting.toString(), "", 0.0);
+            for (int t = 0; t < MESSAGE; t += 1) {
+                messages[m][t] = random.nextInt(n);
+            }
+        }
+        long chars = (long) BATCH * MESSAGE;
+
+        double single = rate(chars, () -> {
+            Machine machine = _machine.copy();
+            int[] result = new int[MESSAGE];
+            for (int m = 0; m < BATCH; m += 1) {
+                keys[m].setUp(machine);
+                machine.convert(messages[m], result, MESSAGE);
+            }
+        });
+        report("one at a time", single, single);
+        BatchMachine batch = new BatchMachine(_machine, BATCH);
+        double batched = rate(chars, () -> {
+            batch.clear();
+            for (Candidate key : keys) {
+                batch.add(key);
+            }
+            int[][] work = new int[BATCH][];
+            for (int m = 0; m < BATCH; m += 1) {
+                work[m] = messages[m].clone();
+            }
+            batch.convert(work);
+        });
+        report("batched", batched, single);
+    }
+
+    /** Return the best rate, in characters per second, at which RUN
+     *  converts _text over several trials. */
+    private double rate(Runnable run) {
+        return rate(_text.length(), run);
+    }
+
+    /** Return the best rate, in characters per second, at which RUN
+     *  converts CHARS characters over several trials. */
+    private double rate(long chars, Runnable run) {
+        double best = 0;
+        for (int trial = 0; trial < TRIALS; trial += 1) {
+            long start = System.nanoTime();
+            run.run();
+            double seconds = (System.nanoTime() - start) * 1e-9;
+            best = Math.max(best, chars / seconds);
+        }
+        return best;
+    }
+
+    /** Print the RATE for the run named NAME and its speedup over BASE. */
+    static void report(String name, double rate, double base) {
+        System.out.printf("%-16s %10.1f Mchar/s  %5.2fx%n", name,
+                rate * 1e-6, rate / base);
+    }
+
+    /** Characters per line of generated text. */
+    private static final int LINE = 60;
+
+    /** Seed for the generated text, so that runs are repeatable. */
+    private static final long SEED = 61;
+
+    /** Number of messages in the batch benchmark. */
+    private static final int BATCH = 4096;
+
+    /** Length of each message in the batch benchmark. */
+    private static final int MESSAGE = 256;
+
+    /** Number of timed trials of each kind. */
+    private static final int TRIALS = 3;
+
+    /** The machine being timed. */
+    private final Machine _machine;
+
+    /** The text converted in each trial. */
+    private final String _text;
+}
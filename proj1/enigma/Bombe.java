@@ -0,0 +1,255 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import static enigma.EnigmaException.*;
+
+/** A known-plaintext search for the key of a message in the manner of
+ *  the Turing bombe.  A crib (a guess at part of the plain text) lined up
+ *  with the ciphertext gives a menu: a graph whose nodes are letters and
+ *  whose edges join each crib letter to the ciphertext letter under it,
+ *  labeled with the step at which it was converted.  At each rotor order
+ *  and initial setting, every hypothesis about the plugboard partner of
+ *  the menu's best-connected letter is followed through the menu until it
+ *  implies some letter has two partners, which rules it out.  Hypotheses
+ *  that survive are stops: possible keys, with the plugboard pairs they
+ *  imply.  Each rotor order is searched by its own task on a
+ *  ForkJoinPool.  Usage:
+ *      java enigma.Bombe [--threads N] CONFIG CIPHERTEXT CRIB [OFFSET]
+ *  prints the stops for the message in file CIPHERTEXT when the text CRIB
+ *  starts at character OFFSET (default 0) of its plain text.
+ *  @author josephhayes
+ */
+public class Bombe {
+
+    /** Run the search described by ARGS (see above). */
+    public static void main(String... args) {
+        try {
+            int threads = Runtime.getRuntime().availableProcessors();
+            int k = 0;
+            if (args.length > 1 && args[0].equals("--threads")) {
+                threads = Integer.parseInt(args[1]);
+                k = 2;
+            }
+            if (args.length - k < 3 || args.length - k > 4) {
+                throw error("Usage: java enigma.Bombe [--threads N] "
+                        + "CONFIG CIPHERTEXT CRIB [OFFSET]");
+            }
+            Machine machine = Main.readMachine(args[k]);
+            int[] cipher = machine.indices(KeySearch.readFile(args[k + 1]));
+            int[] crib = machine.indices(args[k + 2]);
+            int offset =
+                args.length - k == 4 ? Integer.parseInt(args[k + 3]) : 0;
+            Bombe bombe = new Bombe(machine, cipher, crib, offset);
+            for (Candidate stop : bombe.search(threads)) {
+                System.out.printf("%d  %s%n", (int) stop.score(), stop);
+            }
+        } catch (EnigmaException | NumberFormatException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** A search of the keys of MACHINE's configuration for the message
+     *  CIPHER (as alphabet indices) whose plain text contains CRIB (also
+     *  as indices) starting at character OFFSET. */
+    Bombe(Machine machine, int[] cipher, int[] crib, int offset) {
+        if (crib.length == 0) {
+            throw error("empty crib");
+        }
+        if (offset < 0 || offset + crib.length > cipher.length) {
+            throw error("crib does not fit in the message at %d", offset);
+        }
+        _machine = machine.copy();
+        _n = machine.alphabet().size();
+        _offset = offset;
+        _length = crib.length;
+        _orders = KeySearch.rotorOrders(machine);
+        _settings = 1;
+        for (int i = 1; i < machine.numRotors(); i += 1) {
+            _settings *= _n;
+        }
+        buildMenu(Arrays.copyOfRange(cipher, offset, offset + crib.length),
+                  crib);
+    }
+
+    /** Build the menu joining each letter of CRIB to the letter of CIPHER
+     *  at the same step, and choose the test letter. */
+    private void buildMenu(int[] cipher, int[] crib) {
+        int[] degree = new int[_n];
+        for (int t = 0; t < _length; t += 1) {
+            degree[crib[t]] += 1;
+            degree[cipher[t]] += 1;
+        }
+        _menuStart = new int[_n + 1];
+        for (int c = 0; c < _n; c += 1) {
+            _menuStart[c + 1] = _menuStart[c] + degree[c];
+        }
+        _menuTo = new int[2 * _length];
+        _menuStep = new int[2 * _length];
+        int[] fill = Arrays.copyOf(_menuStart, _n);
+        for (int t = 0; t < _length; t += 1) {
+            int p = crib[t], c = cipher[t];
+            _menuTo[fill[p]] = c;
+            _menuStep[fill[p]++] = t;
+            _menuTo[fill[c]] = p;
+            _menuStep[fill[c]++] = t;
+        }
+        _test = 0;
+        for (int c = 1; c < _n; c += 1) {
+            if (degree[c] > degree[_test]) {
+                _test = c;
+            }
+        }
+    }
+
+    /** Return the number of rotor orders and settings to be tried. */
+    long size() {
+        return _orders.size() * _settings;
+    }
+
+    /** Try every rotor order and setting using THREADS threads, and return
+     *  the stops found, those implying the most plugboard pairs first.
+     *  The score of each is the number of letters whose partners it
+     *  determines. */
+    List<Candidate> search(int threads) {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            ArrayList<Future<List<Candidate>>> tasks = new ArrayList<>();
+            for (String[] order : _orders) {
+                Callable<List<Candidate>> task = () -> search(order);
+                tasks.add(pool.submit(task));
+            }
+            ArrayList<Candidate> result = new ArrayList<>();
+            for (Future<List<Candidate>> task : tasks) {
+                result.addAll(task.get());
+            }
+            result.sort(Collections.reverseOrder());
+            return result;
+        } catch (InterruptedException | ExecutionException excp) {
+            throw error("bombe search failed: %s", excp.getMessage());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** Return the stops for the rotors named ORDER, reflector first. */
+    List<Candidate> search(String[] order) {
+        Machine machine = _machine.copy();
+        machine.insertRotors(order);
+        Alphabet alphabet = machine.alphabet();
+        int[] setting = new int[machine.numRotors() - 1];
+        int[] plug = new int[_n];
+        int[] queue = new int[_n];
+        ArrayList<Candidate> result = new ArrayList<>();
+
+        for (long key = 0; key < _settings; key += 1) {
+            long rest = key;
+            for (int i = setting.length - 1; i >= 0; i -= 1) {
+                setting[i] = (int) (rest % _n);
+                rest /= _n;
+            }
+            machine.setRotors(setting);
+            machine.advance(_offset);
+            int[] scramblers = machine.scramblers(_length);
+            for (int guess = 0; guess < _n; guess += 1) {
+                int known = consistent(scramblers, guess, plug, queue);
+                if (known > 0) {
+                    StringBuilder name = new StringBuilder();
+                    for (int s : setting) {
+                        name.append(alphabet.toChar(s));
+                    }
+                    result.add(new Candidate(order, name.toString(),
+                            cycles(plug, alphabet), known));
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Follow the hypothesis that the test letter is plugged to GUESS
+     *  through the menu, where SCRAMBLERS gives the rotors' permutation
+     *  at each step of the crib as for Machine.scramblers.  Leaves the
+     *  partners deduced in PLUG (-1 for none), using QUEUE as work space.
+     *  Returns the number of letters whose partners are deduced, or 0 if
+     *  the hypothesis leads to a contradiction. */
+    private int consistent(int[] scramblers, int guess, int[] plug,
+                           int[] queue) {
+        Arrays.fill(plug, -1);
+        int head = 0, tail = 0, known = 0;
+        plug[_test] = guess;
+        plug[guess] = _test;
+        queue[tail++] = _test;
+        known += _test == guess ? 1 : 2;
+        if (guess != _test) {
+            queue[tail++] = guess;
+        }
+        while (head < tail) {
+            int x = queue[head++];
+            int y = plug[x];
+            for (int e = _menuStart[x]; e < _menuStart[x + 1]; e += 1) {
+                int z = _menuTo[e];
+                int w = scramblers[_menuStep[e] * _n + y];
+                if (plug[z] == w) {
+                    continue;
+                } else if (plug[z] >= 0 || plug[w] >= 0) {
+                    return 0;
+                }
+                plug[z] = w;
+                plug[w] = z;
+                queue[tail++] = z;
+                known += 1;
+                if (w != z) {
+                    queue[tail++] = w;
+                    known += 1;
+                }
+            }
+        }
+        return known;
+    }
+
+    /** Return the pairs of distinct letters of ALPHABET joined by PLUG, in
+     *  cycle notation. */
+    private static String cycles(int[] plug, Alphabet alphabet) {
+        StringBuilder result = new StringBuilder();
+        for (int c = 0; c < plug.length; c += 1) {
+            if (plug[c] > c) {
+                if (result.length() > 0) {
+                    result.append(' ');
+                }
+                result.append('(').append(alphabet.toChar(c))
+                    .append(alphabet.toChar(plug[c])).append(')');
+            }
+        }
+        return result.toString();
+    }
+
+    /** Machine with the configuration being searched. */
+    private final Machine _machine;
+    /** Size of the alphabet. */
+    private final int _n;
+    /** Position of the crib in the message. */
+    private final int _offset;
+    /** Length of the crib. */
+    private final int _length;
+    /** All legal choices of rotors. */
+    private final List<String[]> _orders;
+    /** Number of settings of each choice of rotors. */
+    private long _settings;
+    /** The menu edges from letter C are numbers _menuStart[C] through
+     *  _menuStart[C + 1] - 1. */
+    private int[] _menuStart;
+    /** The letter at the other end of each menu edge. */
+    private int[] _menuTo;
+    /** The step of the crib labeling each menu edge. */
+    private int[] _menuStep;
+    /** The letter whose partner is guessed: the one with most edges. */
+    private int _test;
+}
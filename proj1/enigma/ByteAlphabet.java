@@ -0,0 +1,46 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** The Alphabet of all 256 byte values, in which the character with code
+ *  C (0 <= C < 256) has index C.  Unlike a CharacterRange, it does not
+ *  fold case, so a Machine with this alphabet can convert arbitrary
+ *  binary data as well as text.
+ *  @author josephhayes
+ */
+class ByteAlphabet extends Alphabet {
+
+    @Override
+    int size() {
+        return SIZE;
+    }
+
+    @Override
+    boolean contains(char ch) {
+        return ch < SIZE;
+    }
+
+    @Override
+    char toChar(int index) {
+        if (index < 0 || index >= SIZE) {
+            throw error("character index out of range");
+        }
+        return (char) index;
+    }
+
+    @Override
+    int toInt(char ch) {
+        if (ch >= SIZE) {
+            throw error("character out of range");
+        }
+        return ch;
+    }
+
+    @Override
+    int indexOf(char ch) {
+        return ch < SIZE ? ch : -1;
+    }
+
+    /** Number of byte values. */
+    static final int SIZE = 256;
+}
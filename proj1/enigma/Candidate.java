@@ -0,0 +1,100 @@
+package enigma;
+
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** A possible key for a message found by one of the searches, together
+ *  with the score of the decryption it gives.
+ *  @author josephhayes
+ */
+class Candidate implements Comparable<Candidate> {
+
+    /** A candidate that inserts the rotors named ROTORS (reflector first),
+     *  sets them to SETTING and uses plugboard CYCLES (possibly empty),
+     *  giving a decryption that scores SCORE. */
+    Candidate(String[] rotors, String setting, String cycles, double score) {
+        _rotors = rotors.clone();
+        _setting = setting;
+        _cycles = cycles;
+        _score = score;
+    }
+
+    /** Return the key given by the settings line LINE of an input file
+     *  for a machine with NUMROTORS slots, with score 0. */
+    static Candidate parse(String line, int numRotors) {
+        line = line.trim();
+        if (!line.startsWith("*")) {
+            throw error("not a settings line: %s", line);
+        }
+        String[] fields = line.substring(1).trim()
+            .split("\\s+", numRotors + 2);
+        if (fields.length < numRotors + 1) {
+            throw error("No rotor settings in input file");
+        }
+        return new Candidate(Arrays.copyOf(fields, numRotors),
+                fields[numRotors],
+                fields.length > numRotors + 1 ? fields[numRotors + 1] : "",
+                0.0);
+    }
+
+    /** Return the names of my rotors, reflector first. */
+    String[] rotors() {
+        return _rotors.clone();
+    }
+
+    /** Return my rotor settings, as for Machine.setRotors. */
+    String setting() {
+        return _setting;
+    }
+
+    /** Return my plugboard, in cycle notation. */
+    String cycles() {
+        return _cycles;
+    }
+
+    /** Return the score of my decryption. */
+    double score() {
+        return _score;
+    }
+
+    /** Return a copy of me with plugboard CYCLES and score SCORE. */
+    Candidate withPlugboard(String cycles, double score) {
+        return new Candidate(_rotors, _setting, cycles, score);
+    }
+
+    /** Configure MACHINE according to me. */
+    void setUp(Machine machine) {
+        machine.insertRotors(_rotors);
+        machine.setRotors(_setting);
+        machine.setPlugboard(new Permutation(_cycles, machine.alphabet()));
+    }
+
+    @Override
+    public int compareTo(Candidate other) {
+        return Double.compare(_score, other._score);
+    }
+
+    /** Returns my key as a settings line of an input file. */
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder("*");
+        for (String rotor : _rotors) {
+            result.append(' ').append(rotor);
+        }
+        result.append(' ').append(_setting);
+        if (!_cycles.isEmpty()) {
+            result.append(' ').append(_cycles);
+        }
+        return result.toString();
+    }
+
+    /** Names of my rotors, reflector first. */
+    private final String[] _rotors;
+    /** Initial settings of my rotors. */
+    private final String _setting;
+    /** My plugboard, in cycle notation. */
+    private final String _cycles;
+    /** The score of the decryption I give. */
+    private final double _score;
+}
@@ -0,0 +1,183 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.zip.CRC32;
+
+import static enigma.EnigmaException.*;
+
+/** The compiled form of a configuration file: its alphabet, numbers of
+ *  slots and pawls, and the wiring table and notches of each rotor, in
+ *  binary, so that a machine can be rebuilt without parsing any cycles.
+ *  It is kept in a file next to the configuration, whose name has
+ *  SUFFIX added, and records a checksum of the configuration text it was
+ *  compiled from, so that it is ignored once that text changes.
+ *  @author josephhayes
+ */
+class CompiledConfig {
+
+    /** Return the checksum of the configuration text TEXT. */
+    static long checksum(byte[] text) {
+        CRC32 crc = new CRC32();
+        crc.update(text);
+        return ((long) text.length << Integer.SIZE) | crc.getValue();
+    }
+
+    /** Return the file holding the compiled form of the configuration
+     *  file CONFIG. */
+    static Path compiledFile(Path config) {
+        return config.resolveSibling(config.getFileName() + SUFFIX);
+    }
+
+    /** Return the machine in FILE, if it holds a compiled configuration
+     *  whose checksum is CHECKSUM, and otherwise null. */
+    static Machine read(Path file, long checksum) {
+        if (!Files.isReadable(file)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(
+                 new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION
+                || in.readLong() != checksum) {
+                return null;
+            }
+            Alphabet alphabet = readAlphabet(in);
+            int numRotors = in.readInt();
+            int numPawls = in.readInt();
+            int count = in.readInt();
+            int n = alphabet.size();
+            ArrayList<Rotor> rotors = new ArrayList<>(count);
+            for (int k = 0; k < count; k += 1) {
+                String name = in.readUTF();
+                byte type = in.readByte();
+                int[] table = new int[n];
+                for (int c = 0; c < n; c += 1) {
+                    table[c] = in.readInt();
+                }
+                Permutation perm = new Permutation(alphabet, table);
+                switch (type) {
+                case 'M':
+                    rotors.add(new MovingRotor(name, perm, in.readUTF()));
+                    break;
+                case 'N':
+                    rotors.add(new FixedRotor(name, perm));
+                    break;
+                case 'R':
+                    rotors.add(new Reflector(name, perm));
+                    break;
+                default:
+                    return null;
+                }
+            }
+            return new Machine(alphabet, numRotors, numPawls, rotors);
+        } catch (IOException | EnigmaException excp) {
+            return null;
+        }
+    }
+
+    /** Write the configuration of MACHINE, compiled from configuration
+     *  text with checksum CHECKSUM, to FILE.  The file is written under
+     *  another name and then renamed, so that readers never see it
+     *  half-written. */
+    static void write(Path file, long checksum, Machine machine) {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            Alphabet alphabet = machine.alphabet();
+            int n = alphabet.size();
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(checksum);
+            writeAlphabet(out, alphabet);
+            out.writeInt(machine.numRotors());
+            out.writeInt(machine.numPawls());
+            out.writeInt(machine.rotors().size());
+            for (Rotor rotor : machine.rotors()) {
+                out.writeUTF(rotor.name());
+                out.writeByte(rotor.reflecting() ? 'R'
+                              : rotor.rotates() ? 'M' : 'N');
+                Permutation perm = rotor.permutation();
+                for (int c = 0; c < n; c += 1) {
+                    out.writeInt(perm.permute(c));
+                }
+                if (rotor.rotates()) {
+                    StringBuilder notches = new StringBuilder();
+                    for (int c = 0; c < n; c += 1) {
+                        if (rotor.atNotch(c)) {
+                            notches.append(alphabet.toChar(c));
+                        }
+                    }
+                    /* MovingRotor drops a leading M, which might
+                     * otherwise be a notch. */
+                    out.writeUTF("M" + notches);
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not write %s: %s", temp, excp.getMessage());
+        }
+        try {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw error("could not write %s: %s", file, excp.getMessage());
+        }
+    }
+
+    /** Write ALPHABET to OUT. */
+    private static void writeAlphabet(DataOutputStream out,
+                                      Alphabet alphabet) throws IOException {
+        int n = alphabet.size();
+        if (alphabet instanceof CharacterRange) {
+            out.writeByte(RANGE);
+            out.writeChar(alphabet.toChar(0));
+            out.writeChar(alphabet.toChar(n - 1));
+        } else if (alphabet instanceof ByteAlphabet) {
+            out.writeByte(BYTES);
+        } else {
+            out.writeByte(SYMBOLS);
+            out.writeInt(n);
+            for (int c = 0; c < n; c += 1) {
+                out.writeChar(alphabet.toChar(c));
+            }
+        }
+    }
+
+    /** Return the alphabet written to IN by writeAlphabet. */
+    private static Alphabet readAlphabet(DataInputStream in)
+        throws IOException {
+        switch (in.readByte()) {
+        case RANGE:
+            return new CharacterRange(in.readChar(), in.readChar());
+        case BYTES:
+            return new ByteAlphabet();
+        case SYMBOLS:
+            char[] symbols = new char[in.readInt()];
+            for (int c = 0; c < symbols.length; c += 1) {
+                symbols[c] = in.readChar();
+            }
+            return new SymbolAlphabet(new String(symbols));
+        default:
+            throw new IOException("unknown alphabet");
+        }
+    }
+
+    /** Added to the name of a configuration file to get the name of its
+     *  compiled form. */
+    static final String SUFFIX = ".compiled";
+
+    /** Identifies a compiled configuration file. */
+    private static final int MAGIC = 0x454e4743;
+
+    /** Version of the compiled format, changed whenever it changes. */
+    private static final int VERSION = 1;
+
+    /** Kinds of alphabet. */
+    private static final byte RANGE = 0, SYMBOLS = 1, BYTES = 2;
+}
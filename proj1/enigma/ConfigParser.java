@@ -0,0 +1,125 @@
+package enigma;
+
+import java.util.ArrayList;
+
+import static enigma.EnigmaException.*;
+
+/** A reader of configuration files that makes a single pass over their
+ *  text.  A configuration is an alphabet line (see Main.readAlphabet),
+ *  the numbers of rotor slots and pawls, and then a description of each
+ *  available rotor: its name, its type (M followed by its notches for a
+ *  moving rotor, N for a fixed rotor, R for a reflector), and its cycles,
+ *  which run to the end of the line, or for a reflector, to the end of
+ *  the following line.
+ *  @author josephhayes
+ */
+class ConfigParser {
+
+    /** A parser for the configuration TEXT. */
+    ConfigParser(CharSequence text) {
+        _text = text;
+    }
+
+    /** Return a machine configured as described by my text, with no
+     *  rotors inserted. */
+    Machine parse() {
+        Alphabet alphabet = Main.readAlphabet(line());
+        int numRotors = number();
+        int numPawls = number();
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        while (_pos < _text.length()) {
+            rotors.add(rotor(alphabet));
+        }
+        return new Machine(alphabet, numRotors, numPawls, rotors);
+    }
+
+    /** Return the next rotor described by my text, whose cycles are in
+     *  ALPHABET. */
+    private Rotor rotor(Alphabet alphabet) {
+        String name = token("bad rotor description").toUpperCase();
+        String notches = token("bad rotor description");
+        String cycles = line();
+        char type = notches.charAt(0);
+        if (type == 'R') {
+            if (_pos == _text.length()) {
+                throw error("bad rotor description");
+            }
+            cycles += line();
+        }
+        Permutation permutation = new Permutation(cycles, alphabet);
+        switch (type) {
+        case 'M':
+            return new MovingRotor(name, permutation, notches);
+        case 'N':
+            return new FixedRotor(name, permutation);
+        case 'R':
+            return new Reflector(name, permutation);
+        default:
+            throw error("bad rotor description");
+        }
+    }
+
+    /** Return the next whitespace-delimited token, as a non-negative
+     *  number. */
+    private int number() {
+        String token = token("configuration file truncated");
+        int result = 0;
+        for (int i = 0; i < token.length(); i += 1) {
+            char ch = token.charAt(i);
+            if (ch < '0' || ch > '9' || result > MAX_NUMBER) {
+                throw error("bad number in configuration: %s", token);
+            }
+            result = result * 10 + (ch - '0');
+        }
+        return result;
+    }
+
+    /** Return the next token, skipping whitespace (including line ends)
+     *  before it, or throw an error with message MISSING if there is
+     *  none. */
+    private String token(String missing) {
+        int n = _text.length();
+        while (_pos < n && Character.isWhitespace(_text.charAt(_pos))) {
+            _pos += 1;
+        }
+        if (_pos == n) {
+            throw error(missing);
+        }
+        int start = _pos;
+        while (_pos < n && !Character.isWhitespace(_text.charAt(_pos))) {
+            _pos += 1;
+        }
+        return _text.subSequence(start, _pos).toString();
+    }
+
+    /** Return the rest of the current line, and move to the start of the
+     *  next line.  It is an error to be at the end of the text. */
+    private String line() {
+        int n = _text.length();
+        if (_pos == n) {
+            throw error("configuration file truncated");
+        }
+        int start = _pos;
+        while (_pos < n && _text.charAt(_pos) != '\n'
+               && _text.charAt(_pos) != '\r') {
+            _pos += 1;
+        }
+        String result = _text.subSequence(start, _pos).toString();
+        if (_pos < n && _text.charAt(_pos) == '\r') {
+            _pos += 1;
+        }
+        if (_pos < n && _text.charAt(_pos) == '\n') {
+            _pos += 1;
+        }
+        return result;
+    }
+
+    /** Largest number that can safely be multiplied by 10 and added to
+     *  a digit. */
+    private static final int MAX_NUMBER = (Integer.MAX_VALUE - 9) / 10;
+
+    /** The configuration being read. */
+    private final CharSequence _text;
+    /** Index of the next character of _text to be read. */
+    private int _pos;
+}
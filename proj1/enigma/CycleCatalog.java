@@ -0,0 +1,381 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import static enigma.EnigmaException.*;
+
+/** A catalog of the cycle structures of a configuration, in the manner
+ *  of Rejewski's.  When each message begins with its K-letter message key
+ *  enciphered twice, the permutations made at steps I and I + K of the
+ *  indicator are involutions, and their product depends only on the
+ *  rotors and their initial settings.  The lengths of the cycles of
+ *  these K products (the characteristic) do not depend on the plugboard
+ *  and can be read off a day's indicators, so looking them up in a
+ *  catalog of every rotor order and setting narrows the day's key to a
+ *  few candidates.
+ *
+ *  The catalog is a file of 8-byte entries sorted by a fingerprint of
+ *  the characteristic, each also holding the number of its rotor order
+ *  and setting.  It is built with one task per rotor order, and queried
+ *  by binary search in a memory mapping of the file, so queries never
+ *  read the catalog onto the heap.  Usage:
+ *      java enigma.CycleCatalog build [--threads N] CONFIG CATALOG
+ *      java enigma.CycleCatalog query CONFIG CATALOG INDICATORS
+ *  builds the catalog of configuration CONFIG in file CATALOG, or prints
+ *  the settings lines of the keys whose characteristic is that of the
+ *  indicators (2K letters each, whitespace ignored, one per line) in
+ *  file INDICATORS.
+ *  @author josephhayes
+ */
+public class CycleCatalog {
+
+    /** Build or query a catalog as described by ARGS (see above). */
+    public static void main(String... args) {
+        try {
+            if (args.length >= 3 && args[0].equals("build")) {
+                int threads = Runtime.getRuntime().availableProcessors();
+                int k = 1;
+                if (args[1].equals("--threads")) {
+                    threads = Integer.parseInt(args[2]);
+                    k = 3;
+                }
+                if (args.length - k != 2) {
+                    throw error("Usage: java enigma.CycleCatalog build "
+                            + "[--threads N] CONFIG CATALOG");
+                }
+                build(Main.readMachine(args[k]), args[k + 1], threads);
+            } else if (args.length == 4 && args[0].equals("query")) {
+                Machine machine = Main.readMachine(args[1]);
+                CycleCatalog catalog = new CycleCatalog(machine, args[2]);
+                ArrayList<int[]> indicators = new ArrayList<>();
+                for (String line
+                         : KeySearch.readFile(args[3]).split("\n")) {
+                    if (!line.trim().isEmpty()) {
+                        indicators.add(machine.indices(line));
+                    }
+                }
+                int[][] characteristic = fromIndicators(
+                        machine.alphabet().size(), machine.numRotors() - 1,
+                        indicators);
+                for (Candidate key : catalog.lookup(characteristic)) {
+                    System.out.println(key);
+                }
+            } else {
+                throw error("Usage: java enigma.CycleCatalog build|query "
+                        + "...");
+            }
+        } catch (EnigmaException | NumberFormatException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Return the characteristic of MACHINE's rotors at their current
+     *  settings: for each I < K, where K is the number of settings, the
+     *  cycle type of the product of the permutations made by the rotors
+     *  at steps I and I + K.  Advances MACHINE by 2K. */
+    static int[][] characteristic(Machine machine) {
+        int n = machine.alphabet().size(), k = machine.numRotors() - 1;
+        int[] steps = machine.scramblers(2 * k);
+        int[][] result = new int[k][];
+        int[] product = new int[n];
+        for (int i = 0; i < k; i += 1) {
+            for (int c = 0; c < n; c += 1) {
+                product[c] = steps[(i + k) * n + steps[i * n + c]];
+            }
+            result[i] = Permutation.cycleType(product);
+        }
+        return result;
+    }
+
+    /** Return the characteristic shown by INDICATORS, each of which holds
+     *  the alphabet indices of a message key of K letters from an alphabet
+     *  of N, enciphered twice in a row.  There must be enough indicators
+     *  to determine every product completely. */
+    static int[][] fromIndicators(int n, int k, List<int[]> indicators) {
+        int[][] result = new int[k][];
+        int[] product = new int[n];
+        for (int i = 0; i < k; i += 1) {
+            Arrays.fill(product, -1);
+            for (int[] indicator : indicators) {
+                if (indicator.length != 2 * k) {
+                    throw error("indicators must have %d letters", 2 * k);
+                }
+                int from = indicator[i], to = indicator[i + k];
+                if (product[from] >= 0 && product[from] != to) {
+                    throw error("indicators are not from one key");
+                }
+                product[from] = to;
+            }
+            for (int c = 0; c < n; c += 1) {
+                if (product[c] < 0) {
+                    throw error("too few indicators to find the "
+                            + "characteristic");
+                }
+            }
+            result[i] = Permutation.cycleType(product);
+        }
+        return result;
+    }
+
+    /** Return a 64-bit fingerprint of CHARACTERISTIC. */
+    static long fingerprint(int[][] characteristic) {
+        long result = FNV_BASIS;
+        for (int[] lengths : characteristic) {
+            for (int len : lengths) {
+                result = (result ^ len) * FNV_PRIME;
+            }
+            result = (result ^ SEPARATOR) * FNV_PRIME;
+        }
+        result ^= result >>> 33;
+        result *= MIX;
+        return result ^ (result >>> 33);
+    }
+
+    /** Write the catalog of MACHINE's configuration to the file named
+     *  NAME, using THREADS threads. */
+    static void build(Machine machine, String name, int threads) {
+        List<String[]> orders = KeySearch.rotorOrders(machine);
+        int n = machine.alphabet().size();
+        int settings = 1;
+        for (int i = 1; i < machine.numRotors(); i += 1) {
+            settings *= n;
+        }
+        long total = (long) orders.size() * settings;
+        if (total > Integer.MAX_VALUE) {
+            throw error("configuration has too many keys to catalog");
+        }
+        int idBits = Math.max(1, 64 - Long.numberOfLeadingZeros(total - 1));
+        long[] entries = new long[(int) total];
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            ArrayList<Future<?>> tasks = new ArrayList<>();
+            for (int k = 0; k < orders.size(); k += 1) {
+                final int order = k;
+                final int count = settings;
+                Callable<Void> task = () -> {
+                    catalogOrder(machine, orders.get(order), order, count,
+                                 idBits, entries);
+                    return null;
+                };
+                tasks.add(pool.submit(task));
+            }
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        } catch (InterruptedException | ExecutionException excp) {
+            throw error("catalog build failed: %s", excp.getMessage());
+        } finally {
+            pool.shutdown();
+        }
+        Arrays.parallelSort(entries);
+        write(name, idBits, orders.size(), settings, entries);
+    }
+
+    /** Fill in the entries of ENTRIES for every setting of the rotors
+     *  ORDER, which is rotor order number NUMBER of MACHINE's
+     *  configuration and has SETTINGS settings, with entry numbers of
+     *  IDBITS bits. */
+    private static void catalogOrder(Machine machine, String[] order,
+                                     int number, int settings, int idBits,
+                                     long[] entries) {
+        Machine copy = machine.copy();
+        copy.insertRotors(order);
+        int n = copy.alphabet().size();
+        int[] setting = new int[copy.numRotors() - 1];
+        for (int s = 0; s < settings; s += 1) {
+            decode(s, n, setting);
+            copy.setRotors(setting);
+            long id = (long) number * settings + s;
+            entries[(int) id] =
+                (prefix(fingerprint(characteristic(copy)), idBits) << idBits)
+                | id;
+        }
+    }
+
+    /** Put the settings numbered S (as a base-N numeral, leftmost rotor
+     *  first) into SETTING. */
+    private static void decode(long s, int n, int[] setting) {
+        for (int i = setting.length - 1; i >= 0; i -= 1) {
+            setting[i] = (int) (s % n);
+            s /= n;
+        }
+    }
+
+    /** Return the part of FINGERPRINT kept in entries with IDBITS bits
+     *  of entry number. */
+    private static long prefix(long fingerprint, int idBits) {
+        return fingerprint >>> (idBits + 1);
+    }
+
+    /** Write a catalog with entry numbers of IDBITS bits, ORDERS rotor
+     *  orders of SETTINGS settings each, and sorted ENTRIES, to the file
+     *  named NAME. */
+    private static void write(String name, int idBits, int orders,
+                              int settings, long[] entries) {
+        try (FileChannel channel =
+             FileChannel.open(Paths.get(name), StandardOpenOption.CREATE,
+                              StandardOpenOption.WRITE,
+                              StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER);
+            buffer.putInt(MAGIC).putInt(idBits).putInt(orders)
+                .putInt(settings).putLong(entries.length).putLong(0);
+            for (long entry : entries) {
+                if (!buffer.hasRemaining()) {
+                    drain(channel, buffer);
+                }
+                buffer.putLong(entry);
+            }
+            drain(channel, buffer);
+        } catch (IOException excp) {
+            throw error("could not write %s", name);
+        }
+    }
+
+    /** Write the contents of BUFFER to CHANNEL and clear it. */
+    private static void drain(FileChannel channel, ByteBuffer buffer)
+        throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /** The catalog of MACHINE's configuration in the file named NAME. */
+    CycleCatalog(Machine machine, String name) {
+        _machine = machine.copy();
+        _orders = KeySearch.rotorOrders(machine);
+        try (FileChannel channel =
+             FileChannel.open(Paths.get(name), StandardOpenOption.READ)) {
+            MappedByteBuffer header =
+                channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER);
+            if (header.getInt() != MAGIC) {
+                throw error("%s is not a cycle catalog", name);
+            }
+            _idBits = header.getInt();
+            int orders = header.getInt();
+            _settings = header.getInt();
+            _size = header.getLong();
+            if (orders != _orders.size()
+                || HEADER + _size * Long.BYTES != channel.size()) {
+                throw error("%s is not the catalog of this configuration",
+                            name);
+            }
+            int windows = (int) ((_size + WINDOW_ENTRIES - 1)
+                                 / WINDOW_ENTRIES);
+            _windows = new MappedByteBuffer[windows];
+            for (int w = 0; w < windows; w += 1) {
+                long first = (long) w * WINDOW_ENTRIES;
+                long count = Math.min(WINDOW_ENTRIES, _size - first);
+                _windows[w] = channel.map(FileChannel.MapMode.READ_ONLY,
+                        HEADER + first * Long.BYTES, count * Long.BYTES);
+            }
+        } catch (IOException excp) {
+            throw error("could not read %s", name);
+        }
+    }
+
+    /** Return the number of keys in the catalog. */
+    long size() {
+        return _size;
+    }
+
+    /** Return the keys (rotors and settings, with no plugboard) whose
+     *  characteristic is CHARACTERISTIC. */
+    List<Candidate> lookup(int[][] characteristic) {
+        long prefix = prefix(fingerprint(characteristic), _idBits);
+        long lo = prefix << _idBits, hi = (prefix + 1) << _idBits;
+        long first = lowerBound(lo);
+        long last = hi < 0 ? _size : lowerBound(hi);
+        ArrayList<Candidate> result = new ArrayList<>();
+        int n = _machine.alphabet().size();
+        int[] setting = new int[_machine.numRotors() - 1];
+        long idMask = (1L << _idBits) - 1;
+        for (long i = first; i < last; i += 1) {
+            long id = entry(i) & idMask;
+            String[] order = _orders.get((int) (id / _settings));
+            decode(id % _settings, n, setting);
+            _machine.insertRotors(order);
+            _machine.setRotors(setting);
+            if (Arrays.deepEquals(characteristic,
+                                  characteristic(_machine))) {
+                StringBuilder name = new StringBuilder();
+                for (int s : setting) {
+                    name.append(_machine.alphabet().toChar(s));
+                }
+                result.add(new Candidate(order, name.toString(), "", 0.0));
+            }
+        }
+        return result;
+    }
+
+    /** Return the number of the first entry that is at least KEY, or
+     *  size() if there is none. */
+    private long lowerBound(long key) {
+        long lo = 0, hi = _size;
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            if (entry(mid) < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Return entry number I. */
+    private long entry(long i) {
+        return _windows[(int) (i / WINDOW_ENTRIES)]
+            .getLong((int) (i % WINDOW_ENTRIES) * Long.BYTES);
+    }
+
+    /** Identifies catalog files ("CYCL"). */
+    private static final int MAGIC = 0x4359434c;
+
+    /** Bytes before the entries of a catalog file. */
+    private static final int HEADER = 32;
+
+    /** Number of entries in each mapped window of a catalog. */
+    private static final long WINDOW_ENTRIES = 1L << 27;
+
+    /** Size of the buffer used to write catalogs. */
+    private static final int WRITE_BUFFER = 1 << 16;
+
+    /** Constants of the FNV-1a hash used for fingerprints. */
+    private static final long FNV_BASIS = 0xcbf29ce484222325L,
+        FNV_PRIME = 0x100000001b3L;
+
+    /** Mixed in between the cycle types of a characteristic. */
+    private static final long SEPARATOR = 0xff;
+
+    /** Multiplier spreading the bits of fingerprints. */
+    private static final long MIX = 0xff51afd7ed558ccdL;
+
+    /** Machine used to check the keys found. */
+    private final Machine _machine;
+    /** The rotor orders of the configuration, by number. */
+    private final List<String[]> _orders;
+    /** Number of bits of each entry holding its key number. */
+    private final int _idBits;
+    /** Number of settings of each rotor order. */
+    private final int _settings;
+    /** Number of entries. */
+    private final long _size;
+    /** Mappings of consecutive parts of the entries. */
+    private final MappedByteBuffer[] _windows;
+}
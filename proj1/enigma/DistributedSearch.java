@@ -0,0 +1,617 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static enigma.EnigmaException.*;
+
+/** A key search, as by KeySearch, divided into numbered work units that
+ *  are done by separate worker processes and recorded in a checkpoint
+ *  file as they finish, so that a search that stops part way can be
+ *  resumed.  Unit U tries the settings in one range of one choice of
+ *  rotors: each choice of rotors is split into ranges of SIZE settings,
+ *  numbered as by KeySearch.  Usage:
+ *      java enigma.DistributedSearch [--workers N] [--threads T]
+ *          [--unit SIZE] [--top K] [--ngrams TABLE] [--timeout SECS]
+ *          CONFIG CIPHERTEXT CHECKPOINT
+ *  starts N (default 2) worker JVMs, each searching with T threads
+ *  (default 1), hands them units over local sockets until all are done,
+ *  and prints the K (default 10) best keys, best first, as KeySearch
+ *  does.  Units already recorded in file CHECKPOINT are not done again;
+ *  the file is created if it does not exist.  A worker that spends more
+ *  than SECS seconds (default 600) on one unit is dropped, and the unit
+ *  is handed to another.
+ *
+ *  Workers connect to the coordinator, which sends each a line
+ *      unit U LO HI ROTOR...
+ *  for each unit it is to do, and the line "quit" once all are done.  A
+ *  worker replies to each unit with a line "result U COUNT" followed by
+ *  COUNT lines "SCORE KEY", one for each of the best keys it found.  The
+ *  checkpoint file is a header line describing the search, including the
+ *  scorer and a checksum of CONFIG, and then, for each unit done, lines
+ *  "U SCORE KEY" for its keys followed by the line "U .", which marks it
+ *  complete.  A unit is written in one piece and
+ *  the file is synced after it, so a unit whose lines are cut off by a
+ *  crash is simply done again.
+ *  @author josephhayes
+ */
+public class DistributedSearch {
+
+    /** Run a search or a worker as described by ARGS (see above).  A
+     *  worker is given the option --worker PORT, with the other options
+     *  and the first two arguments of its coordinator. */
+    public static void main(String... args) {
+        try {
+            int workers = DEFAULT_WORKERS, threads = 1, top = DEFAULT_TOP;
+            long unit = DEFAULT_UNIT;
+            int timeout = DEFAULT_TIMEOUT;
+            int port = -1;
+            String ngrams = null;
+            int k;
+            for (k = 0; k + 1 < args.length && args[k].startsWith("--");
+                 k += 2) {
+                switch (args[k]) {
+                case "--workers":
+                    workers = Integer.parseInt(args[k + 1]);
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[k + 1]);
+                    break;
+                case "--unit":
+                    unit = Long.parseLong(args[k + 1]);
+                    break;
+                case "--top":
+                    top = Integer.parseInt(args[k + 1]);
+                    break;
+                case "--ngrams":
+                    ngrams = args[k + 1];
+                    break;
+                case "--timeout":
+                    timeout = Math.multiplyExact(Integer.parseInt(
+                            args[k + 1]), 1000);
+                    break;
+                case "--worker":
+                    port = Integer.parseInt(args[k + 1]);
+                    break;
+                default:
+                    throw error("unknown option: %s", args[k]);
+                }
+            }
+            if (args.length - k != (port < 0 ? 3 : 2) || workers < 1
+                || threads < 1 || unit < 1 || top < 1 || timeout < 1) {
+                throw error("Usage: java enigma.DistributedSearch "
+                        + "[--workers N] [--threads T] [--unit SIZE] "
+                        + "[--top K] [--ngrams TABLE] [--timeout SECS] "
+                        + "CONFIG CIPHERTEXT CHECKPOINT");
+            }
+            Machine machine = Main.readMachine(args[k]);
+            int[] cipher = machine.indices(KeySearch.readFile(args[k + 1]));
+            if (port >= 0) {
+                Scorer scorer = ngrams == null
+                    ? new IndexOfCoincidence(machine.alphabet().size())
+                    : NGramScorer.load(ngrams, machine.alphabet().size());
+                work(port, machine, scorer, cipher, top, threads);
+                return;
+            }
+
+            String scorer = "index of coincidence";
+            if (ngrams != null) {
+                scorer = String.format("%d-grams %016x",
+                        NGramScorer.load(ngrams,
+                                         machine.alphabet().size()).n(),
+                        checksum(Paths.get(ngrams)));
+            }
+            DistributedSearch search = new DistributedSearch(machine,
+                    cipher, top, unit, scorer, checksum(Paths.get(args[k])),
+                    Paths.get(args[k + 2]));
+            search.setTimeout(timeout);
+            int done = search.resume();
+            System.err.printf("%d of %d units already done%n", done,
+                              search.units());
+            List<Candidate> found;
+            try (ServerSocket server = listen()) {
+                ArrayList<String> command = new ArrayList<>(Arrays.asList(
+                        Paths.get(System.getProperty("java.home"), "bin",
+                                  "java").toString(),
+                        "-cp", System.getProperty("java.class.path"),
+                        DistributedSearch.class.getName(),
+                        "--worker", Integer.toString(server.getLocalPort()),
+                        "--threads", Integer.toString(threads),
+                        "--top", Integer.toString(top)));
+                if (ngrams != null) {
+                    command.add("--ngrams");
+                    command.add(ngrams);
+                }
+                command.add(args[k]);
+                command.add(args[k + 1]);
+                ArrayList<Process> processes = new ArrayList<>();
+                for (int w = 0; w < workers && done < search.units();
+                     w += 1) {
+                    processes.add(new ProcessBuilder(command)
+                                  .redirectOutput(ProcessBuilder.Redirect
+                                                  .DISCARD)
+                                  .redirectError(ProcessBuilder.Redirect
+                                                 .INHERIT)
+                                  .start());
+                }
+                try {
+                    found = search.run(server,
+                            () -> processes.stream()
+                                  .anyMatch(Process::isAlive),
+                            System.err);
+                } finally {
+                    for (Process process : processes) {
+                        process.destroy();
+                    }
+                }
+            }
+            for (Candidate best : found) {
+                System.out.printf("%.6f  %s%n", best.score(), best);
+            }
+        } catch (IOException | EnigmaException | NumberFormatException
+                 | ArithmeticException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Return the checksum of the contents of FILE. */
+    static long checksum(Path file) {
+        try {
+            return CompiledConfig.checksum(Files.readAllBytes(file));
+        } catch (IOException excp) {
+            throw error("could not read %s", file);
+        }
+    }
+
+    /** Return a server socket on a free local port. */
+    static ServerSocket listen() throws IOException {
+        return new ServerSocket(0, 0, InetAddress.getLoopbackAddress());
+    }
+
+    /** Connect to the coordinator at local port PORT and do the units it
+     *  sends, trying keys of MACHINE's configuration for the message
+     *  CIPHER (as alphabet indices) with THREADS threads, rating them
+     *  with SCORER and returning the KEEP best of each unit, until told
+     *  to quit or disconnected. */
+    static void work(int port, Machine machine, Scorer scorer, int[] cipher,
+                     int keep, int threads) throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(),
+                                        port);
+             BufferedReader in = new BufferedReader(new InputStreamReader(
+                     socket.getInputStream(), StandardCharsets.UTF_8));
+             Writer out = new BufferedWriter(new OutputStreamWriter(
+                     socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null && !line.equals("quit")) {
+                String[] words = line.split(" ");
+                if (words.length < 5 || !words[0].equals("unit")) {
+                    throw error("bad request from coordinator: %s", line);
+                }
+                List<Candidate> found =
+                    new KeySearch(machine, scorer, cipher, keep)
+                    .search(Arrays.copyOfRange(words, 4, words.length),
+                            Long.parseLong(words[2]),
+                            Long.parseLong(words[3]), threads);
+                out.write(String.format("result %s %d%n", words[1],
+                                        found.size()));
+                for (Candidate key : found) {
+                    out.write(key.score() + " " + key + "\n");
+                }
+                out.flush();
+            }
+        }
+    }
+
+    /** A search of the keys of MACHINE's configuration for the message
+     *  CIPHER (as alphabet indices), keeping the KEEP best, in units of
+     *  UNITSIZE settings, recorded in the file CHECKPOINT.  SCORER names
+     *  the way the workers rate keys and CONFIG is a checksum of the
+     *  configuration text; a checkpoint written with either one different
+     *  is not resumed. */
+    DistributedSearch(Machine machine, int[] cipher, int keep,
+                      long unitSize, String scorer, long config,
+                      Path checkpoint) {
+        _numRotors = machine.numRotors();
+        _cipher = cipher;
+        _keep = keep;
+        _unitSize = unitSize;
+        _scorer = scorer;
+        _config = config;
+        _checkpointFile = checkpoint;
+        _orders = KeySearch.rotorOrders(machine);
+        _settings = 1;
+        for (int i = 1; i < machine.numRotors(); i += 1) {
+            _settings *= machine.alphabet().size();
+        }
+        _unitsPerOrder = (_settings + unitSize - 1) / unitSize;
+        long units = _orders.size() * _unitsPerOrder;
+        if (units > Integer.MAX_VALUE) {
+            throw error("too many work units; use a larger unit size");
+        }
+        _completed = new boolean[(int) units];
+    }
+
+    /** Drop any worker that has not finished a unit TIMEOUT milliseconds
+     *  after it was handed out, and hand the unit to another. */
+    void setTimeout(int timeout) {
+        _timeout = timeout;
+    }
+
+    /** Return the number of work units. */
+    int units() {
+        return _completed.length;
+    }
+
+    /** Return the number of work units done. */
+    synchronized int done() {
+        return _done;
+    }
+
+    /** Read the units already done from my checkpoint file, if it exists,
+     *  and otherwise create it.  Returns the number of units done. */
+    int resume() {
+        try {
+            String text = "";
+            if (Files.exists(_checkpointFile)) {
+                text = new String(Files.readAllBytes(_checkpointFile),
+                                  StandardCharsets.UTF_8);
+                String[] lines = text.split("\r?\n");
+                if (!lines[0].equals(header())) {
+                    throw error("%s is not a checkpoint of this search",
+                                _checkpointFile);
+                }
+                readUnits(Arrays.asList(lines).subList(1, lines.length));
+            }
+            _checkpointStream = new FileOutputStream(_checkpointFile.toFile(),
+                                                     true);
+            _checkpoint = new BufferedWriter(new OutputStreamWriter(
+                    _checkpointStream, StandardCharsets.UTF_8));
+            if (text.isEmpty()) {
+                _checkpoint.write(header() + "\n");
+            } else if (!text.endsWith("\n")) {
+                _checkpoint.write("\n");
+            }
+            sync();
+        } catch (IOException excp) {
+            throw error("could not open checkpoint %s: %s", _checkpointFile,
+                        excp.getMessage());
+        }
+        for (int unit = 0; unit < units(); unit += 1) {
+            if (!_completed[unit]) {
+                _pending.add(unit);
+            }
+        }
+        return done();
+    }
+
+    /** Record the units completed in LINES, from a checkpoint file.  A
+     *  unit's lines count only if they are followed by its completion
+     *  line, so a unit whose lines are cut short is ignored, and if it
+     *  was then done again, only its last set of lines is used. */
+    private void readUnits(List<String> lines) {
+        HashMap<Integer, List<Candidate>> partial = new HashMap<>();
+        int last = -1;
+        for (String line : lines) {
+            int space = line.indexOf(' ');
+            int unit;
+            try {
+                unit = Integer.parseInt(line.substring(0, Math.max(0,
+                                                                   space)));
+            } catch (NumberFormatException excp) {
+                continue;
+            }
+            if (unit < 0 || unit >= units() || _completed[unit]) {
+                continue;
+            }
+            if (unit != last) {
+                partial.put(unit, new ArrayList<>());
+                last = unit;
+            }
+            String rest = line.substring(space + 1);
+            if (rest.equals(".")) {
+                complete(unit, partial.remove(unit));
+                last = -1;
+            } else {
+                try {
+                    partial.get(unit).add(parseKey(rest));
+                } catch (EnigmaException | NumberFormatException excp) {
+                    /* Cut off by a crash; the unit has no completion line
+                     * after this. */
+                }
+            }
+        }
+    }
+
+    /** Return the key with score described by LINE, "SCORE KEY". */
+    private Candidate parseKey(String line) {
+        int space = line.indexOf(' ');
+        if (space < 0) {
+            throw error("bad key: %s", line);
+        }
+        Candidate key = Candidate.parse(line.substring(space + 1),
+                                        _numRotors);
+        return key.withPlugboard(key.cycles(),
+                                 Double.parseDouble(line.substring(0, space)));
+    }
+
+    /** Return the header line of my checkpoint file, which identifies the
+     *  search. */
+    private String header() {
+        return String.format("enigma key search: %d units of %d settings, "
+                             + "%d rotor orders, top %d, message %08x, "
+                             + "config %016x, scorer %s",
+                             units(), _unitSize, _orders.size(), _keep,
+                             Arrays.hashCode(_cipher), _config, _scorer);
+    }
+
+    /** Hand the units not yet done to the workers that connect to SERVER,
+     *  until all are done, reporting progress to PROGRESS about once a
+     *  second, unless it is null.  ALIVE tells whether any worker that
+     *  has not connected yet might still do so; if not, and no worker
+     *  remains connected, the search stops with an error, and may be
+     *  resumed later.  Returns the best keys found, best first. */
+    List<Candidate> run(ServerSocket server, BooleanSupplier alive,
+                        PrintStream progress) throws IOException {
+        server.setSoTimeout(ACCEPT_TIMEOUT);
+        long lastReport = System.currentTimeMillis();
+        try {
+            while (done() < units()) {
+                checkFailure();
+                try {
+                    Socket socket = server.accept();
+                    _connected.incrementAndGet();
+                    Thread handler = new Thread(() -> serve(socket),
+                                                "enigma-coordinator");
+                    handler.setDaemon(true);
+                    handler.start();
+                } catch (SocketTimeoutException excp) {
+                    if (_connected.get() == 0 && done() < units()
+                        && !alive.getAsBoolean()) {
+                        throw error("all workers stopped with %d of %d "
+                                    + "units left; run again to resume",
+                                    units() - done(), units());
+                    }
+                }
+                long now = System.currentTimeMillis();
+                if (progress != null && now - lastReport >= REPORT_INTERVAL) {
+                    printProgress(progress);
+                    lastReport = now;
+                }
+            }
+            checkFailure();
+        } finally {
+            synchronized (this) {
+                _stopped = true;
+                notifyAll();
+                _checkpoint.close();
+            }
+        }
+        if (progress != null) {
+            printProgress(progress);
+        }
+        return results();
+    }
+
+    /** Hand units to the worker connected by SOCKET until all are done or
+     *  it fails or times out.  A unit it fails to finish is handed on to
+     *  another. */
+    private void serve(Socket socket) {
+        int unit = -1;
+        try (socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(
+                     socket.getInputStream(), StandardCharsets.UTF_8));
+             Writer out = new BufferedWriter(new OutputStreamWriter(
+                     socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            socket.setSoTimeout(_timeout);
+            while ((unit = next()) >= 0) {
+                int order = (int) (unit / _unitsPerOrder);
+                long lo = (unit % _unitsPerOrder) * _unitSize,
+                    hi = Math.min(lo + _unitSize, _settings);
+                out.write(String.format("unit %d %d %d %s%n", unit, lo, hi,
+                                        String.join(" ",
+                                                    _orders.get(order))));
+                out.flush();
+                String[] reply = String.valueOf(in.readLine()).split(" ");
+                if (reply.length != 3 || !reply[0].equals("result")
+                    || Integer.parseInt(reply[1]) != unit) {
+                    throw new IOException("bad reply from worker");
+                }
+                ArrayList<Candidate> found = new ArrayList<>();
+                for (int n = Integer.parseInt(reply[2]); n > 0; n -= 1) {
+                    String line = in.readLine();
+                    if (line == null) {
+                        throw new IOException("worker disconnected");
+                    }
+                    found.add(parseKey(line));
+                }
+                record(unit, found);
+                unit = -1;
+            }
+            out.write("quit\n");
+        } catch (IOException | EnigmaException | NumberFormatException excp) {
+            /* The worker has failed or timed out; give its unit to
+             * another. */
+            if (unit >= 0) {
+                requeue(unit);
+            }
+        } finally {
+            _connected.decrementAndGet();
+        }
+    }
+
+    /** Return the next unit to hand out, waiting until one is available,
+     *  or -1 if none remain. */
+    private synchronized int next() {
+        try {
+            while (_pending.isEmpty() && !_stopped) {
+                wait();
+            }
+        } catch (InterruptedException excp) {
+            return -1;
+        }
+        return _stopped ? -1 : _pending.remove();
+    }
+
+    /** Put UNIT back to be handed out again. */
+    private synchronized void requeue(int unit) {
+        if (!_completed[unit]) {
+            _pending.add(unit);
+            notifyAll();
+        }
+    }
+
+    /** Record that UNIT was done, finding the keys FOUND, in my
+     *  checkpoint file. */
+    private synchronized void record(int unit, List<Candidate> found) {
+        if (_completed[unit]) {
+            return;
+        }
+        try {
+            for (Candidate key : found) {
+                _checkpoint.write(unit + " " + key.score() + " " + key
+                                  + "\n");
+            }
+            _checkpoint.write(unit + " .\n");
+            sync();
+        } catch (IOException excp) {
+            _failure = error("could not write checkpoint %s: %s",
+                             _checkpointFile, excp.getMessage());
+            _stopped = true;
+            notifyAll();
+            return;
+        }
+        complete(unit, found);
+        if (_done == units()) {
+            _stopped = true;
+            notifyAll();
+        }
+    }
+
+    /** Mark UNIT done, with keys FOUND. */
+    private synchronized void complete(int unit, List<Candidate> found) {
+        _completed[unit] = true;
+        _done += 1;
+        for (Candidate key : found) {
+            _best.add(key);
+            if (_best.size() > _keep) {
+                _best.poll();
+            }
+        }
+    }
+
+    /** Write out everything written to my checkpoint file so far, and make
+     *  sure it reaches the disk. */
+    private void sync() throws IOException {
+        _checkpoint.flush();
+        _checkpointStream.getFD().sync();
+    }
+
+    /** Throw the error that stopped the search, if any. */
+    private synchronized void checkFailure() {
+        if (_failure != null) {
+            throw _failure;
+        }
+    }
+
+    /** Return the best keys found, best first. */
+    synchronized List<Candidate> results() {
+        ArrayList<Candidate> result = new ArrayList<>(_best);
+        result.sort(Collections.reverseOrder());
+        return result;
+    }
+
+    /** Print the number of units done and the best key so far to OUT. */
+    private void printProgress(PrintStream out) {
+        List<Candidate> best = results();
+        out.printf("done %d of %d units (%.1f%%)%s%n", done(), units(),
+                100.0 * done() / units(),
+                best.isEmpty() ? ""
+                : String.format(", best %.6f: %s", best.get(0).score(),
+                                best.get(0)));
+    }
+
+    /** Number of workers started by main unless --workers is given. */
+    private static final int DEFAULT_WORKERS = 2;
+
+    /** Number of keys printed by main unless --top is given. */
+    private static final int DEFAULT_TOP = 10;
+
+    /** Settings in a unit unless --unit is given. */
+    private static final long DEFAULT_UNIT = 1 << 16;
+
+    /** Milliseconds a worker may spend on a unit unless --timeout is
+     *  given. */
+    private static final int DEFAULT_TIMEOUT = 600_000;
+
+    /** Milliseconds to wait for a worker to connect before checking on
+     *  the search. */
+    private static final int ACCEPT_TIMEOUT = 100;
+
+    /** Milliseconds between progress reports. */
+    private static final long REPORT_INTERVAL = 1000;
+
+    /** Number of rotor slots. */
+    private final int _numRotors;
+    /** The message, as alphabet indices. */
+    private final int[] _cipher;
+    /** Number of best keys to keep. */
+    private final int _keep;
+    /** Number of settings in a unit. */
+    private final long _unitSize;
+    /** Names the way the workers rate keys. */
+    private final String _scorer;
+    /** Checksum of the configuration text. */
+    private final long _config;
+    /** Milliseconds a worker may spend on a unit. */
+    private int _timeout = DEFAULT_TIMEOUT;
+    /** All legal choices of rotors. */
+    private final List<String[]> _orders;
+    /** Number of settings of each choice of rotors. */
+    private long _settings;
+    /** Number of units for each choice of rotors. */
+    private final long _unitsPerOrder;
+    /** The file in which units done are recorded. */
+    private final Path _checkpointFile;
+    /** The stream appending to _checkpointFile. */
+    private FileOutputStream _checkpointStream;
+    /** Writes to _checkpointStream. */
+    private Writer _checkpoint;
+    /** Element U is true iff unit U is done. */
+    private final boolean[] _completed;
+    /** Number of units done. */
+    private int _done;
+    /** Units not yet done or being done. */
+    private final ArrayDeque<Integer> _pending = new ArrayDeque<>();
+    /** True once no more units are to be handed out. */
+    private boolean _stopped;
+    /** The error that stopped the search, if any. */
+    private EnigmaException _failure;
+    /** Number of workers connected. */
+    private final AtomicInteger _connected = new AtomicInteger();
+    /** The best keys found so far, worst first. */
+    private final PriorityQueue<Candidate> _best = new PriorityQueue<>();
+}
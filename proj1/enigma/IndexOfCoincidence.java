@@ -0,0 +1,33 @@
+package enigma;
+
+/** A Scorer that rates text by its index of coincidence: the chance
+ *  that two characters picked from it at random are the same.  Natural
+ *  language scores well above random text.
+ *  @author josephhayes
+ */
+class IndexOfCoincidence implements Scorer {
+
+    /** A scorer for text in an alphabet of SIZE characters. */
+    IndexOfCoincidence(int size) {
+        _size = size;
+    }
+
+    @Override
+    public double score(int[] text, int length) {
+        if (length < 2) {
+            return 0.0;
+        }
+        int[] counts = new int[_size];
+        for (int i = 0; i < length; i += 1) {
+            counts[text[i]] += 1;
+        }
+        long total = 0;
+        for (int count : counts) {
+            total += (long) count * (count - 1);
+        }
+        return (double) total / ((long) length * (length - 1));
+    }
+
+    /** The size of the alphabet. */
+    private final int _size;
+}
@@ -0,0 +1,379 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static enigma.EnigmaException.*;
+
+/** A ciphertext-only search for the rotors and settings of a message.
+ *  Every legal choice of rotors from a machine's configuration is tried
+ *  at every initial setting, and each decryption is rated by a Scorer.
+ *  The work is divided among the threads of a ForkJoinPool, each with
+ *  its own copy of the machine.  Usage:
+ *      java enigma.KeySearch [--threads N] [--top K] [--restarts R]
+ *          [--ngrams TABLE] CONFIG CIPHERTEXT
+ *  prints the K (default 10) best keys for the message in file
+ *  CIPHERTEXT as settings lines, best first.  Decryptions are rated by
+ *  their index of coincidence, or with --ngrams, by an NGramScorer
+ *  using the table in file TABLE.  With --restarts, the
+ *  plugboard of each of those keys is then recovered by a
+ *  PlugboardSolver making R hill climbs, and the keys are printed with
+ *  their plugboards.
+ *  @author josephhayes
+ */
+public class KeySearch {
+
+    /** Search for the keys of the message given by ARGS (see above). */
+    public static void main(String... args) {
+        try {
+            int threads = Runtime.getRuntime().availableProcessors();
+            int top = DEFAULT_TOP;
+            int restarts = 0;
+            String ngrams = null;
+            int k;
+            for (k = 0; k + 1 < args.length && args[k].startsWith("--");
+                 k += 2) {
+                switch (args[k]) {
+                case "--threads":
+                    threads = Integer.parseInt(args[k + 1]);
+                    break;
+                case "--top":
+                    top = Integer.parseInt(args[k + 1]);
+                    break;
+                case "--restarts":
+                    restarts = Integer.parseInt(args[k + 1]);
+                    break;
+                case "--ngrams":
+                    ngrams = args[k + 1];
+                    break;
+                default:
+                    throw error("unknown option: %s", args[k]);
+                }
+            }
+            if (args.length - k != 2) {
+                throw error("Usage: java enigma.KeySearch [--threads N] "
+                        + "[--top K] [--restarts R] [--ngrams TABLE] "
+                        + "CONFIG CIPHERTEXT");
+            }
+            Machine machine = Main.readMachine(args[k]);
+            int[] cipher = machine.indices(readFile(args[k + 1]));
+            Scorer scorer = ngrams == null
+                ? new IndexOfCoincidence(machine.alphabet().size())
+                : NGramScorer.load(ngrams, machine.alphabet().size());
+            KeySearch search = new KeySearch(machine, scorer, cipher, top);
+            List<Candidate> found = search.search(threads, System.err);
+            if (restarts > 0) {
+                ArrayList<Candidate> solved = new ArrayList<>();
+                for (Candidate key : found) {
+                    solved.add(new PlugboardSolver(machine, key, cipher)
+                               .solve(restarts, machine.alphabet().size() / 2,
+                                      threads, PLUGBOARD_SEED));
+                }
+                solved.sort(Collections.reverseOrder());
+                found = solved;
+            }
+            for (Candidate best : found) {
+                System.out.printf("%.6f  %s%n", best.score(), best);
+            }
+        } catch (EnigmaException | NumberFormatException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Return the contents of the file named NAME. */
+    static String readFile(String name) {
+        try {
+            return new String(Files.readAllBytes(Paths.get(name)));
+        } catch (IOException excp) {
+            throw error("could not read %s", name);
+        }
+    }
+
+    /** A search of the keys of MACHINE's configuration for the message
+     *  CIPHER (as alphabet indices), rating each decryption with SCORER
+     *  and keeping the KEEP best. */
+    KeySearch(Machine machine, Scorer scorer, int[] cipher, int keep) {
+        _machine = machine.copy();
+        _scorer = scorer;
+        _cipher = cipher;
+        _keep = keep;
+        _orders = rotorOrders(machine);
+        _settings = 1;
+        for (int i = 1; i < machine.numRotors(); i += 1) {
+            _settings *= machine.alphabet().size();
+        }
+    }
+
+    /** Return every legal way of filling the slots of MACHINE from its
+     *  rotors: a reflector, then non-moving rotors, then numPawls()
+     *  moving rotors, with no rotor used twice. */
+    static List<String[]> rotorOrders(Machine machine) {
+        ArrayList<String> reflectors = new ArrayList<>(),
+            fixed = new ArrayList<>(), moving = new ArrayList<>();
+        for (Rotor rotor : machine.rotors()) {
+            if (rotor.reflecting()) {
+                reflectors.add(rotor.name());
+            } else if (rotor.rotates()) {
+                moving.add(rotor.name());
+            } else {
+                fixed.add(rotor.name());
+            }
+        }
+        int slots = machine.numRotors(), pawls = machine.numPawls();
+        List<String[]> result = new ArrayList<>();
+        for (String reflector : reflectors) {
+            String[] order = new String[slots];
+            order[0] = reflector;
+            fill(order, 1, slots - pawls, fixed, moving, result);
+        }
+        return result;
+    }
+
+    /** Add to RESULT all completions of ORDER from slot K onward, taking
+     *  slots below MOVING from FIXED and the rest from ROTATING. */
+    private static void fill(String[] order, int k, int moving,
+                             List<String> fixed, List<String> rotating,
+                             List<String[]> result) {
+        if (k == order.length) {
+            result.add(order.clone());
+            return;
+        }
+        for (String name : k < moving ? fixed : rotating) {
+            if (!Arrays.asList(order).subList(0, k).contains(name)) {
+                order[k] = name;
+                fill(order, k + 1, moving, fixed, rotating, result);
+            }
+        }
+        order[k] = null;
+    }
+
+    /** Return the number of keys to be tried. */
+    long size() {
+        return _orders.size() * _settings;
+    }
+
+    /** Return the number of keys tried so far. */
+    long done() {
+        return _done.get();
+    }
+
+    /** Return the best key found so far, or null if there is none. */
+    synchronized Candidate best() {
+        Candidate result = null;
+        for (Candidate candidate : _best) {
+            if (result == null || candidate.compareTo(result) > 0) {
+                result = candidate;
+            }
+        }
+        return result;
+    }
+
+    /** Try all keys using THREADS threads, reporting progress and the
+     *  best key so far to PROGRESS about once a second, unless it is
+     *  null.  Returns the best keys found, best first. */
+    List<Candidate> search(int threads, PrintStream progress) {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        Thread reporter = null;
+        if (progress != null) {
+            reporter = new Thread(() -> report(progress));
+            reporter.setDaemon(true);
+            reporter.start();
+        }
+        try {
+            ArrayList<OrderTask> tasks = new ArrayList<>();
+            for (String[] order : _orders) {
+                tasks.add(new OrderTask(order));
+            }
+            pool.submit(() -> RecursiveAction.invokeAll(tasks)).join();
+        } finally {
+            pool.shutdown();
+            if (reporter != null) {
+                reporter.interrupt();
+            }
+        }
+        if (progress != null) {
+            printProgress(progress);
+        }
+        return results();
+    }
+
+    /** Try settings LO .. HI-1 (numbered as by RangeTask) of the rotors
+     *  named ORDER using THREADS threads, and return the best keys found
+     *  so far, best first. */
+    List<Candidate> search(String[] order, long lo, long hi, int threads) {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.submit(() -> {
+                Machine template = _machine.copy();
+                template.insertRotors(order);
+                new RangeTask(template, order, lo, hi).invoke();
+            }).join();
+        } finally {
+            pool.shutdown();
+        }
+        return results();
+    }
+
+    /** Return the best keys found, best first. */
+    synchronized List<Candidate> results() {
+        ArrayList<Candidate> result = new ArrayList<>(_best);
+        result.sort(Collections.reverseOrder());
+        return result;
+    }
+
+    /** Print a progress line to OUT about once a second until
+     *  interrupted. */
+    private void report(PrintStream out) {
+        try {
+            while (true) {
+                Thread.sleep(REPORT_INTERVAL);
+                printProgress(out);
+            }
+        } catch (InterruptedException excp) {
+            /* Search is over. */
+        }
+    }
+
+    /** Print the fraction of the search done and the best key so far
+     *  to OUT. */
+    private void printProgress(PrintStream out) {
+        Candidate best = best();
+        out.printf("searched %d of %d keys (%.1f%%)%s%n", done(), size(),
+                100.0 * done() / Math.max(1, size()),
+                best == null ? ""
+                : String.format(", best %.6f: %s", best.score(), best));
+    }
+
+    /** Add CANDIDATES to the best keys found, keeping only the best. */
+    private synchronized void offer(List<Candidate> candidates) {
+        for (Candidate candidate : candidates) {
+            _best.add(candidate);
+            if (_best.size() > _keep) {
+                _best.poll();
+            }
+        }
+    }
+
+    /** Tries every setting of one choice of rotors. */
+    private class OrderTask extends RecursiveAction {
+
+        /** A task for the rotors named ORDER, reflector first. */
+        OrderTask(String[] order) {
+            _order = order;
+        }
+
+        @Override
+        protected void compute() {
+            Machine template = _machine.copy();
+            template.insertRotors(_order);
+            new RangeTask(template, _order, 0, _settings).invoke();
+        }
+
+        /** Names of the rotors tried. */
+        private final String[] _order;
+    }
+
+    /** Tries a range of settings of one choice of rotors. */
+    private class RangeTask extends RecursiveAction {
+
+        /** A task that tries settings LO .. HI-1 (numbered as base-size
+         *  numerals, leftmost rotor first) of the rotors named ORDER,
+         *  using copies of TEMPLATE, which has them inserted. */
+        RangeTask(Machine template, String[] order, long lo, long hi) {
+            _template = template;
+            _order = order;
+            _lo = lo;
+            _hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (_hi - _lo > LEAF_SIZE) {
+                long mid = (_lo + _hi) >>> 1;
+                invokeAll(new RangeTask(_template, _order, _lo, mid),
+                          new RangeTask(_template, _order, mid, _hi));
+                return;
+            }
+            Machine machine = _template.copy();
+            Alphabet alphabet = machine.alphabet();
+            int n = alphabet.size();
+            int[] setting = new int[machine.numRotors() - 1];
+            int[] plain = new int[_cipher.length];
+            PriorityQueue<Candidate> best = new PriorityQueue<>();
+            double worst = Double.NEGATIVE_INFINITY;
+
+            for (long key = _lo; key < _hi; key += 1) {
+                long rest = key;
+                for (int i = setting.length - 1; i >= 0; i -= 1) {
+                    setting[i] = (int) (rest % n);
+                    rest /= n;
+                }
+                machine.setRotors(setting);
+                machine.convert(_cipher, plain, _cipher.length);
+                double score = _scorer.score(plain, _cipher.length);
+                if (best.size() < _keep || score > worst) {
+                    StringBuilder name = new StringBuilder();
+                    for (int s : setting) {
+                        name.append(alphabet.toChar(s));
+                    }
+                    best.add(new Candidate(_order, name.toString(), "",
+                            score));
+                    if (best.size() > _keep) {
+                        best.poll();
+                    }
+                    worst = best.peek().score();
+                }
+            }
+            offer(new ArrayList<>(best));
+            _done.addAndGet(_hi - _lo);
+        }
+
+        /** Machine with my rotors inserted. */
+        private final Machine _template;
+        /** Names of my rotors. */
+        private final String[] _order;
+        /** Bounds of my range of settings. */
+        private final long _lo, _hi;
+    }
+
+    /** Most settings tried by one task. */
+    private static final long LEAF_SIZE = 1 << 12;
+
+    /** Milliseconds between progress reports. */
+    private static final long REPORT_INTERVAL = 1000;
+
+    /** Number of keys printed by main unless --top is given. */
+    private static final int DEFAULT_TOP = 10;
+
+    /** Seed for the random plugboards tried by main, so that runs are
+     *  repeatable. */
+    private static final long PLUGBOARD_SEED = 61;
+
+    /** Machine with the configuration being searched. */
+    private final Machine _machine;
+    /** Rates decryptions. */
+    private final Scorer _scorer;
+    /** The message, as alphabet indices. */
+    private final int[] _cipher;
+    /** Number of best keys to keep. */
+    private final int _keep;
+    /** All legal choices of rotors. */
+    private final List<String[]> _orders;
+    /** Number of settings of each choice of rotors. */
+    private long _settings;
+    /** Number of keys tried so far. */
+    private final AtomicLong _done = new AtomicLong();
+    /** The best keys found so far, worst first. */
+    private final PriorityQueue<Candidate> _best = new PriorityQueue<>();
+}
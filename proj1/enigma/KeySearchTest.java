@@ -0,0 +1,405 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/** The suite of all JUnit tests for the key searches.
+ *  @author josephhayes
+ */
+public class KeySearchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Alphabet of the small test machine. */
+    static final Alphabet SMALL = new CharacterRange('A', 'H');
+
+    /** Return a machine with alphabet SMALL, 4 slots and 2 pawls, with two
+     *  rotors of each kind and three moving rotors. */
+    static Machine smallMachine() {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("R1", new Permutation("(AE) (BF) (CG) (DH)",
+                SMALL)));
+        rotors.add(new Reflector("R2", new Permutation("(AB) (CD) (EF) (GH)",
+                SMALL)));
+        rotors.add(new FixedRotor("F1", new Permutation("(ABDC) (EHF)",
+                SMALL)));
+        rotors.add(new FixedRotor("F2", new Permutation("(AC) (BHGD)",
+                SMALL)));
+        rotors.add(new MovingRotor("M1", new Permutation("(AFCH) (BEDG)",
+                SMALL), "MC"));
+        rotors.add(new MovingRotor("M2", new Permutation("(ADGBFH) (CE)",
+                SMALL), "MF"));
+        rotors.add(new MovingRotor("M3", new Permutation("(AGEC) (BD) (FH)",
+                SMALL), "MAE"));
+        return new Machine(SMALL, 4, 2, rotors);
+    }
+
+    /** A Scorer that counts the positions at which text agrees with
+     *  EXPECTED. */
+    static Scorer matching(int[] expected) {
+        return (text, length) -> {
+            int score = 0;
+            for (int i = 0; i < length; i += 1) {
+                if (text[i] == expected[i]) {
+                    score += 1;
+                }
+            }
+            return score;
+        };
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkRotorOrders() {
+        List<String[]> orders = KeySearch.rotorOrders(smallMachine());
+        assertEquals(2 * 2 * 3 * 2, orders.size());
+        for (String[] order : orders) {
+            assertTrue(order[0].startsWith("R"));
+            assertTrue(order[1].startsWith("F"));
+            assertTrue(order[2].startsWith("M"));
+            assertTrue(order[3].startsWith("M"));
+            assertNotEquals(order[2], order[3]);
+        }
+    }
+
+    @Test
+    public void checkSearchFindsKey() {
+        Machine machine = smallMachine();
+        String plain = "HEADBADGEFACEDBEADCABBAGEDEAFACADE";
+        machine.insertRotors(new String[] {"R2", "F1", "M3", "M1"});
+        machine.setRotors("CHB");
+        String ciphertext = machine.convert(plain);
+        int[] cipher = machine.indices(ciphertext);
+
+        KeySearch search = new KeySearch(smallMachine(),
+                matching(smallMachine().indices(plain)), cipher, 20);
+        assertEquals(24 * 8 * 8 * 8, search.size());
+        List<Candidate> best = search.search(2, null);
+        assertEquals(search.size(), search.done());
+        assertEquals(20, best.size());
+        assertEquals(plain.length(), best.get(0).score(), 0.0);
+        boolean found = false;
+        for (int k = 0; k < best.size(); k += 1) {
+            if (k > 0) {
+                assertTrue(best.get(k).score() <= best.get(k - 1).score());
+            }
+            found |= best.get(k).toString().equals("* R2 F1 M3 M1 CHB");
+        }
+        assertTrue(found);
+
+        Machine check = smallMachine();
+        best.get(0).setUp(check);
+        assertEquals(plain, check.convert(ciphertext).replace(" ", ""));
+    }
+
+    @Test
+    public void checkPlugboardSolver() {
+        Machine machine = smallMachine();
+        String plain = "AAAAHAAAAHEAAAAAHAAHAAAEAAAAAHAAAAEHAAAAAAAHAAAA"
+            + "AAHAAAEAAAAHAAAAAAAAEAAAHAAAAAAAAHHAAAAAAEAAAAAAH";
+        Candidate key = new Candidate(new String[] {"R1", "F2", "M2", "M3"},
+                "BGE", "(AD) (CH)", 0.0);
+        key.setUp(machine);
+        int[] cipher = machine.indices(machine.convert(plain));
+
+        PlugboardSolver solver = new PlugboardSolver(smallMachine(),
+                key.withPlugboard("", 0.0), cipher);
+        Candidate best = solver.solve(16, 4, 2, 1);
+        Scorer ioc = new IndexOfCoincidence(SMALL.size());
+        assertTrue(best.score() >= solver.score(""));
+        assertTrue(best.score() >= solver.score("(AD) (CH)") - 1e-12);
+
+        Machine check = smallMachine();
+        best.setUp(check);
+        int[] decrypted = new int[cipher.length];
+        check.convert(cipher, decrypted, cipher.length);
+        assertEquals(ioc.score(decrypted, cipher.length), best.score(),
+                1e-12);
+        assertEquals(best.score(), solver.score(best.cycles()), 1e-12);
+    }
+
+    @Test
+    public void checkBombeFindsKey() {
+        Machine machine = smallMachine();
+        String plain = "HEADBADGEFACEDBEADCABBAGEDEAFACADE";
+        Candidate key = new Candidate(new String[] {"R1", "F2", "M2", "M3"},
+                "BGE", "(AD) (CH)", 0.0);
+        key.setUp(machine);
+        int[] cipher = machine.indices(machine.convert(plain));
+        int[] crib = machine.indices(plain.substring(6, 26));
+
+        Bombe bombe = new Bombe(smallMachine(), cipher, crib, 6);
+        assertEquals(24 * 8 * 8 * 8, bombe.size());
+        List<Candidate> stops = bombe.search(2);
+        assertTrue(stops.size() < bombe.size());
+        Candidate found = null;
+        for (Candidate stop : stops) {
+            if (stop.toString().startsWith("* R1 F2 M2 M3 BGE")) {
+                assertNull(found);
+                found = stop;
+            }
+        }
+        assertNotNull(found);
+        assertEquals(8, found.score(), 0.0);
+        assertEquals("(AD) (CH)", found.cycles());
+    }
+
+    @Test
+    public void checkNGramScorer() throws IOException {
+        int[] corpus =
+            smallMachine().indices("HEADBADGEFACEDBEADCABBAGEDEAFACADE");
+        NGramScorer trained = NGramScorer.train(8, 3, corpus, corpus.length);
+        File file = File.createTempFile("ngrams", ".bin");
+        file.deleteOnExit();
+        trained.save(file.getPath());
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        assertEquals(12 + 8 * 8 * 8 * 4, bytes.length);
+        assertArrayEquals(new byte[] {3, 0, 0, 0, 8, 0, 0, 0},
+                Arrays.copyOfRange(bytes, 4, 12));
+        NGramScorer loaded = NGramScorer.load(file.getPath(), 8);
+        assertEquals(3, loaded.n());
+
+        int[] text = smallMachine().indices("BADGEHEADFACE");
+        double score = loaded.score(text, text.length);
+        assertEquals(trained.score(text, text.length), score, 1e-9);
+        assertTrue(score > loaded.score(new int[] {7, 7, 7, 7, 7, 7, 7, 7,
+            7, 7, 7, 7, 7}, text.length));
+        for (int pos = 0; pos < text.length; pos += 1) {
+            for (int c = 0; c < 8; c += 1) {
+                double delta = loaded.delta(text, text.length, pos, c);
+                int old = text[pos];
+                text[pos] = c;
+                assertEquals(loaded.score(text, text.length), score + delta,
+                        1e-4);
+                text[pos] = old;
+            }
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkNGramAlphabetMismatch() throws IOException {
+        int[] corpus = smallMachine().indices("HEADBADGEFACE");
+        File file = File.createTempFile("ngrams", ".bin");
+        file.deleteOnExit();
+        NGramScorer.train(8, 2, corpus, corpus.length).save(file.getPath());
+        NGramScorer.load(file.getPath(), 26);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkNGramTableTooLarge() {
+        NGramScorer.train(256, 4, new int[0], 0);
+    }
+
+    @Test
+    public void checkCycleCatalog() throws IOException {
+        File file = File.createTempFile("cycles", ".bin");
+        file.deleteOnExit();
+        CycleCatalog.build(smallMachine(), file.getPath(), 2);
+        CycleCatalog catalog = new CycleCatalog(smallMachine(),
+                file.getPath());
+        assertEquals(24 * 8 * 8 * 8, catalog.size());
+
+        Machine machine = smallMachine();
+        Candidate key = new Candidate(new String[] {"R2", "F1", "M3", "M1"},
+                "CHB", "(AD) (CH)", 0.0);
+        key.setUp(machine);
+        int[][] characteristic = CycleCatalog.characteristic(machine);
+        List<Candidate> found = catalog.lookup(characteristic);
+        assertTrue(found.size() < catalog.size() / 4);
+        boolean present = false;
+        for (Candidate candidate : found) {
+            present |= candidate.toString().equals("* R2 F1 M3 M1 CHB");
+            Machine check = smallMachine();
+            candidate.setUp(check);
+            assertArrayEquals(characteristic,
+                    CycleCatalog.characteristic(check));
+        }
+        assertTrue(present);
+
+        ArrayList<int[]> indicators = new ArrayList<>();
+        Random random = new Random(7);
+        for (int k = 0; k < 200; k += 1) {
+            key.setUp(machine);
+            int[] msgKey = new int[6];
+            for (int i = 0; i < 3; i += 1) {
+                msgKey[i] = msgKey[i + 3] = random.nextInt(8);
+            }
+            int[] indicator = new int[6];
+            machine.convert(msgKey, indicator, 6);
+            indicators.add(indicator);
+        }
+        assertArrayEquals(characteristic,
+                CycleCatalog.fromIndicators(8, 3, indicators));
+    }
+
+    @Test
+    public void checkIndexOfCoincidence() {
+        Scorer ioc = new IndexOfCoincidence(4);
+        assertEquals(1.0, ioc.score(new int[] {2, 2, 2, 2}, 4), 1e-9);
+        assertEquals(0.0, ioc.score(new int[] {0, 1, 2, 3}, 4), 1e-9);
+        assertEquals(2.0 / 12, ioc.score(new int[] {0, 0, 1, 2}, 4), 1e-9);
+    }
+
+    /** Run DISTRIBUTED to completion with two workers on threads of this
+     *  JVM, rating keys with SCORER, and return the keys it finds.  If
+     *  STALLED, a worker that never replies connects first. */
+    static List<Candidate> distribute(DistributedSearch distributed,
+                                      int[] cipher, Scorer scorer,
+                                      boolean stalled)
+        throws IOException {
+        ArrayList<Thread> workers = new ArrayList<>();
+        try (ServerSocket server = DistributedSearch.listen()) {
+            Socket stall = null;
+            if (stalled) {
+                stall = new Socket(server.getInetAddress(),
+                                   server.getLocalPort());
+            }
+            for (int w = 0; w < 2; w += 1) {
+                Thread worker = new Thread(() -> {
+                    try {
+                        DistributedSearch.work(server.getLocalPort(),
+                                smallMachine(), scorer, cipher, 20, 1);
+                    } catch (IOException excp) {
+                        /* Coordinator finished. */
+                    }
+                });
+                worker.start();
+                workers.add(worker);
+            }
+            try {
+                return distributed.run(server,
+                        () -> workers.stream().anyMatch(Thread::isAlive),
+                        null);
+            } finally {
+                if (stall != null) {
+                    stall.close();
+                }
+            }
+        }
+    }
+
+    /** Return the scores of KEYS. */
+    static List<Double> scores(List<Candidate> keys) {
+        ArrayList<Double> result = new ArrayList<>();
+        for (Candidate key : keys) {
+            result.add(key.score());
+        }
+        return result;
+    }
+
+    @Test
+    public void checkDistributedSearch() throws IOException {
+        Machine machine = smallMachine();
+        String plain = "HEADBADGEFACEDBEADCABBAGEDEAFACADE";
+        machine.insertRotors(new String[] {"R2", "F1", "M3", "M1"});
+        machine.setRotors("CHB");
+        int[] cipher = machine.indices(machine.convert(plain));
+        Scorer scorer = matching(smallMachine().indices(plain));
+        List<Candidate> expected =
+            new KeySearch(smallMachine(), scorer, cipher, 20).search(2, null);
+
+        File file = File.createTempFile("search", ".txt");
+        file.delete();
+        file.deleteOnExit();
+        DistributedSearch distributed = new DistributedSearch(smallMachine(),
+                cipher, 20, 100, "matching", 1, file.toPath());
+        assertEquals(24 * 6, distributed.units());
+        assertEquals(0, distributed.resume());
+        List<Candidate> found = distribute(distributed, cipher, scorer, false);
+        assertEquals(distributed.units(), distributed.done());
+        assertEquals(scores(expected), scores(found));
+        assertTrue(found.stream().anyMatch(key ->
+                key.toString().equals("* R2 F1 M3 M1 CHB")));
+
+        /* Lose the completion of two units, and cut the last line short,
+         * as a crash might. */
+        List<String> lines = Files.readAllLines(file.toPath());
+        lines.remove("7 .");
+        lines.remove("100 .");
+        String text = String.join("\n", lines);
+        Files.write(file.toPath(),
+                text.substring(0, text.length() - 1).getBytes());
+        distributed = new DistributedSearch(smallMachine(), cipher, 20, 100,
+                "matching", 1, file.toPath());
+        assertEquals(distributed.units() - 3, distributed.resume());
+        found = distribute(distributed, cipher, scorer, false);
+        assertEquals(scores(expected), scores(found));
+        assertTrue(found.stream().anyMatch(key ->
+                key.toString().equals("* R2 F1 M3 M1 CHB")));
+
+        distributed = new DistributedSearch(smallMachine(), cipher, 20, 100,
+                "matching", 1, file.toPath());
+        assertEquals(distributed.units(), distributed.resume());
+        assertEquals(scores(expected), scores(distributed.results()));
+
+    }
+
+    /** Start a search of a checkpoint file, then resume it as a search
+     *  whose workers' scorer is named SCORER, of a configuration whose
+     *  checksum is CONFIG. */
+    private void resumeAs(String scorer, long config) throws IOException {
+        File file = File.createTempFile("search", ".txt");
+        file.delete();
+        file.deleteOnExit();
+        int[] cipher = smallMachine().indices("HEADBADGE");
+        new DistributedSearch(smallMachine(), cipher, 20, 100, "matching", 1,
+                              file.toPath()).resume();
+        new DistributedSearch(smallMachine(), cipher, 20, 100, scorer, config,
+                              file.toPath()).resume();
+    }
+
+    @Test
+    public void checkDistributedResumeSame() throws IOException {
+        resumeAs("matching", 1);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkDistributedOtherScorer() throws IOException {
+        resumeAs("other", 1);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkDistributedOtherConfig() throws IOException {
+        resumeAs("matching", 2);
+    }
+
+    @Test
+    public void checkDistributedTimeout() throws IOException {
+        Machine machine = smallMachine();
+        String plain = "HEADBADGEFACEDBEADCABBAGEDEAFACADE";
+        machine.insertRotors(new String[] {"R2", "F1", "M3", "M1"});
+        machine.setRotors("CHB");
+        int[] cipher = machine.indices(machine.convert(plain));
+        Scorer scorer = matching(smallMachine().indices(plain));
+
+        File file = File.createTempFile("search", ".txt");
+        file.delete();
+        file.deleteOnExit();
+        DistributedSearch distributed = new DistributedSearch(smallMachine(),
+                cipher, 20, 1000, "matching", 1, file.toPath());
+        distributed.setTimeout(200);
+        distributed.resume();
+        List<Candidate> found = distribute(distributed, cipher, scorer, true);
+        assertEquals(distributed.units(), distributed.done());
+        assertTrue(found.stream().anyMatch(key ->
+                key.toString().equals("* R2 F1 M3 M1 CHB")));
+    }
+
+}
@@ -0,0 +1,225 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import static enigma.EnigmaException.*;
+
+/** A cache of keystreams for keys that are used for many messages.  The
+ *  keystream of a key is the substitution made by the whole machine
+ *  (plugboard and rotors) at each step of a message, which depends only
+ *  on the step.  It is stored as one byte per character per step for the
+ *  whole period of the rotors, after which the substitutions repeat, so
+ *  that converting a message takes one table lookup per character.  The
+ *  least recently used keystreams are dropped when the cache would
+ *  otherwise exceed its memory budget, so that the tables cached never
+ *  take more than the budget.  A key whose table alone would take more
+ *  gets a keystream with no table, which is not cached and converts with
+ *  a machine.  A cache may be used by several threads at once.
+ *  @author josephhayes
+ */
+class KeystreamCache {
+
+    /** A cache of keystreams for keys of configuration SPEC, which may
+     *  hold up to BUDGET bytes of tables. */
+    KeystreamCache(MachineSpec spec, long budget) {
+        if (spec.alphabet().size() > MAX_SYMBOLS) {
+            throw error("keystreams need an alphabet of at most %d symbols",
+                        MAX_SYMBOLS);
+        }
+        _spec = spec;
+        _budget = budget;
+    }
+
+    /** Return the keystream of KEY, computing it if it is not cached. */
+    Keystream get(Candidate key) {
+        String name = key.toString();
+        synchronized (this) {
+            Keystream result = _cache.get(name);
+            if (result != null) {
+                _hits += 1;
+                return result;
+            }
+            _misses += 1;
+        }
+        Keystream result = new Keystream(key, _budget);
+        if (result.bytes() == 0) {
+            return result;
+        }
+        synchronized (this) {
+            Keystream other = _cache.putIfAbsent(name, result);
+            if (other != null) {
+                return other;
+            }
+            _bytes += result.bytes();
+            /* result.bytes() <= _budget, so this ends with _bytes <=
+             * _budget. */
+            Iterator<Keystream> eldest = _cache.values().iterator();
+            while (_bytes > _budget && eldest.hasNext()) {
+                Keystream victim = eldest.next();
+                if (victim != result) {
+                    _bytes -= victim.bytes();
+                    eldest.remove();
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Return the number of keystreams cached. */
+    synchronized int size() {
+        return _cache.size();
+    }
+
+    /** Return the number of bytes of tables cached. */
+    synchronized long bytes() {
+        return _bytes;
+    }
+
+    /** Return the number of calls to get that found their keystream
+     *  cached. */
+    synchronized long hits() {
+        return _hits;
+    }
+
+    /** Return the number of calls to get that had to compute their
+     *  keystream. */
+    synchronized long misses() {
+        return _misses;
+    }
+
+    /** The substitutions made at each step of a message by one key. */
+    class Keystream {
+
+        /** The keystream of KEY, whose table takes at most MAXBYTES
+         *  bytes.  The size of the table is found before it is built: a
+         *  whole period if that fits, or else MAX_STEPS steps if that
+         *  fits, or else no table at all. */
+        Keystream(Candidate key, long maxBytes) {
+            Machine machine = _spec.newMachine();
+            key.setUp(machine);
+            int n = _spec.alphabet().size();
+            long limit = Math.min(MAX_STEPS, maxBytes / n);
+            long period = limit > 0 ? machine.period(limit) : -1;
+            _key = key;
+            _n = n;
+            _periodic = period > 0;
+            if (_periodic) {
+                _steps = (int) period;
+            } else if (limit == MAX_STEPS) {
+                _steps = MAX_STEPS;
+            } else {
+                _steps = 0;
+            }
+            _table = new byte[_steps * n];
+
+            Permutation plugboard = new Permutation(key.cycles(),
+                    _spec.alphabet());
+            int[] plug = new int[n];
+            for (int c = 0; c < n; c += 1) {
+                plug[c] = plugboard.permute(c);
+            }
+            for (int t = 0; t < _steps; t += CHUNK) {
+                int count = Math.min(CHUNK, _steps - t);
+                int[] rotors = machine.scramblers(count);
+                for (int k = 0; k < count * n; k += n) {
+                    int row = t * n + k;
+                    for (int c = 0; c < n; c += 1) {
+                        _table[row + c] = (byte) plug[rotors[k + plug[c]]];
+                    }
+                }
+            }
+        }
+
+        /** Return the size of my table in bytes. */
+        long bytes() {
+            return _table.length;
+        }
+
+        /** Return the number of steps after which my substitutions repeat,
+         *  or -1 if that was too many to store. */
+        long period() {
+            return _periodic ? _steps : -1;
+        }
+
+        /** Convert the first LENGTH alphabet indices in MSG, starting at
+         *  the beginning of a message, putting the results in RESULT, as
+         *  Machine.convert(int[], int[], int) would. */
+        void convert(int[] msg, int[] result, int length) {
+            byte[] table = _table;
+            int n = _n;
+            int end = _periodic ? length : Math.min(length, _steps);
+            int row = 0, rowEnd = _steps * n;
+            for (int t = 0; t < end; t += 1) {
+                result[t] = table[row + msg[t]] & BYTE_MASK;
+                row += n;
+                if (row == rowEnd) {
+                    row = 0;
+                }
+            }
+            if (end < length) {
+                Machine machine = _spec.newMachine();
+                _key.setUp(machine);
+                machine.advance(_steps);
+                int[] rest = Arrays.copyOfRange(msg, end, length);
+                machine.convert(rest, rest, rest.length);
+                System.arraycopy(rest, 0, result, end, rest.length);
+            }
+        }
+
+        /** Return the conversion of MSG, as Machine.convert(String) would
+         *  give it starting at the beginning of a message. */
+        String convert(String msg) {
+            int[] text = _spec.session().indices(msg);
+            convert(text, text, text.length);
+            Alphabet alphabet = _spec.alphabet();
+            StringBuilder result = new StringBuilder(text.length * 6 / 5);
+            for (int i = 0; i < text.length; i += 1) {
+                if (i > 0 && i % GROUP == 0) {
+                    result.append(' ');
+                }
+                result.append(alphabet.toChar(text[i]));
+            }
+            return result.toString();
+        }
+
+        /** The key I am the keystream of. */
+        private final Candidate _key;
+        /** Size of the alphabet. */
+        private final int _n;
+        /** True iff my table covers a whole period. */
+        private final boolean _periodic;
+        /** Number of steps in my table. */
+        private final int _steps;
+        /** Entry T * _n + C is the conversion of C at step T (from 0). */
+        private final byte[] _table;
+    }
+
+    /** Most symbols in an alphabet whose keystreams fit in bytes. */
+    private static final int MAX_SYMBOLS = 256;
+
+    /** Mask giving the unsigned value of a byte. */
+    private static final int BYTE_MASK = 0xff;
+
+    /** Most steps stored for a key whose rotors have a longer period. */
+    private static final int MAX_STEPS = 1 << 18;
+
+    /** Number of steps computed at a time when building a keystream. */
+    private static final int CHUNK = 1 << 12;
+
+    /** Number of characters in each group of converted output. */
+    private static final int GROUP = 5;
+
+    /** Configuration of the keys. */
+    private final MachineSpec _spec;
+    /** Most bytes of tables to keep. */
+    private final long _budget;
+    /** Bytes of tables kept. */
+    private long _bytes;
+    /** Calls to get that found or did not find their keystream. */
+    private long _hits, _misses;
+    /** Cached keystreams by key, least recently used first. */
+    private final LinkedHashMap<String, Keystream> _cache =
+        new LinkedHashMap<>(16, 0.75f, true);
+}
@@ -0,0 +1,102 @@
+package enigma;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/** A record of how long operations took, from which percentiles can be
+ *  read.  Durations are counted in buckets whose width grows with their
+ *  size, so that any duration is recorded to within about 6% in a fixed
+ *  amount of space.  Any number of threads may record at once.
+ *  @author josephhayes
+ */
+class LatencyHistogram {
+
+    /** Record an operation that took NANOS nanoseconds. */
+    void record(long nanos) {
+        _counts.incrementAndGet(bucket(Math.max(0, nanos)));
+    }
+
+    /** Return the number of operations recorded. */
+    long count() {
+        long result = 0;
+        for (int b = 0; b < BUCKETS; b += 1) {
+            result += _counts.get(b);
+        }
+        return result;
+    }
+
+    /** Return an upper bound, in nanoseconds, on the duration of the
+     *  fastest FRACTION (between 0 and 1) of the recorded operations, or
+     *  0 if there are none. */
+    long percentile(double fraction) {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int b = 0; b < BUCKETS; b += 1) {
+            counts[b] = _counts.get(b);
+            total += counts[b];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b += 1) {
+            seen += counts[b];
+            if (seen >= rank) {
+                return highest(b);
+            }
+        }
+        return highest(BUCKETS - 1);
+    }
+
+    /** Return a one-line summary of the recorded durations, in
+     *  microseconds. */
+    String summary() {
+        return String.format("%d requests, latency p50 %.1f us, p90 %.1f us,"
+                + " p99 %.1f us, p99.9 %.1f us, max %.1f us", count(),
+                percentile(0.5) * 1e-3, percentile(0.9) * 1e-3,
+                percentile(0.99) * 1e-3, percentile(0.999) * 1e-3,
+                percentile(1.0) * 1e-3);
+    }
+
+    /** Forget all recorded operations. */
+    void reset() {
+        for (int b = 0; b < BUCKETS; b += 1) {
+            _counts.set(b, 0);
+        }
+    }
+
+    /** Return the bucket of the duration NANOS >= 0.  Durations below
+     *  SUB have a bucket each; above that, each power of two is split
+     *  into SUB buckets. */
+    static int bucket(long nanos) {
+        int top = 63 - Long.numberOfLeadingZeros(nanos | 1);
+        if (top < SUB_BITS) {
+            return (int) nanos;
+        }
+        int shift = top - SUB_BITS;
+        return ((shift + 1) << SUB_BITS)
+            | (int) ((nanos >>> shift) & (SUB - 1));
+    }
+
+    /** Return the largest duration in BUCKET. */
+    static long highest(int bucket) {
+        int group = bucket >>> SUB_BITS;
+        if (group == 0) {
+            return bucket;
+        }
+        long lowest = (long) (SUB | (bucket & (SUB - 1))) << (group - 1);
+        return lowest + (1L << (group - 1)) - 1;
+    }
+
+    /** Log base 2 of the number of buckets per power of two. */
+    private static final int SUB_BITS = 4;
+
+    /** Number of buckets per power of two. */
+    private static final int SUB = 1 << SUB_BITS;
+
+    /** Total number of buckets, enough for any non-negative long. */
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB;
+
+    /** Number of operations recorded in each bucket. */
+    private final AtomicLongArray _counts = new AtomicLongArray(BUCKETS);
+}
@@ -1,8 +1,15 @@
 package enigma;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Collection;
 
 import static enigma.EnigmaException.*;
@@ -25,6 +32,35 @@ class Machine {
         this._numRotors = numRotors;
         this._pawls = pawls;
         addRotors(allRotors);
+        compilePlugboard();
+        _symbols = new char[alpha.size()];
+        for (int i = 0; i < _symbols.length; i += 1) {
+            _symbols[i] = alpha.toChar(i);
+        }
+    }
+
+    /**
+     * A new Machine with the same configuration and state as ORIGINAL,
+     * sharing its (unchanging) tables but not its settings.
+     */
+    private Machine(Machine original) {
+        this._alphabet = original._alphabet;
+        this._numRotors = original._numRotors;
+        this._pawls = original._pawls;
+        this._allRotors = original._allRotors;
+        this._wirings = new HashMap<>(original._wirings);
+        this._plugBoard = original._plugBoard;
+        this._plug = original._plug;
+        this._symbols = original._symbols;
+        this._slots = new ArrayList<>(original._slots);
+        this._rotors = original._rotors;
+        this._forward = original._forward;
+        this._backward = original._backward;
+        this._notches = original._notches;
+        this._rotates = original._rotates;
+        this._positions = original._positions.clone();
+        this._schedule = original._schedule;
+        this._mirrored = false;
     }
 
     /**
@@ -54,6 +90,49 @@ class Machine {
         return this._pawls;
     }
 
+    /**
+     * Return my alphabet.
+     */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /**
+     * Return all the rotors available to me, in the order they were
+     * given to me.
+     */
+    Collection<Rotor> rotors() {
+        return Collections.unmodifiableCollection(_allRotors.values());
+    }
+
+    /**
+     * Return the names of a legal set of rotors for insertRotors: the
+     * first reflector, non-moving rotors and moving rotors available, in
+     * the order they were given to me.
+     */
+    String[] defaultRotors() {
+        String[] result = new String[_numRotors];
+        int fixed = 1, moving = _numRotors - _pawls;
+        for (Rotor rotor : _allRotors.values()) {
+            if (rotor.reflecting()) {
+                if (result[0] == null) {
+                    result[0] = rotor.name();
+                }
+            } else if (rotor.rotates()) {
+                if (moving < _numRotors) {
+                    result[moving++] = rotor.name();
+                }
+            } else if (fixed < _numRotors - _pawls) {
+                result[fixed++] = rotor.name();
+            }
+        }
+        if (result[0] == null || fixed < _numRotors - _pawls
+                || moving < _numRotors) {
+            throw error("not enough rotors of each kind");
+        }
+        return result;
+    }
+
     /**
      * Set my rotor slots to the rotors named ROTORS from this machine's set of
      * available rotors (ROTORS[0] names the reflector).
@@ -73,21 +152,42 @@ class Machine {
         if (Collections.frequency(_slots, "MovingRotor") > _pawls) {
             throw error("Too many moving rotors in machine.");
         }
+        compileSlots();
     }
 
     /**
      * Set my rotors according to SETTING, which must be a string of
-     * numRotors()-1 upper-case letters. The first letter refers to the
-     * leftmost rotor setting (not counting the reflector).
+     * numRotors()-1 characters of my alphabet (or lower-case forms of
+     * its letters). The first character refers to the leftmost rotor
+     * setting (not counting the reflector).
      */
     void setRotors(String setting) throws EnigmaException {
-        setting = setting.toUpperCase();
-
         if (setting.length() > numRotors() - 1) {
             throw error("Too many characters in setting", setting);
         }
         for (int i = 0; i < setting.length(); i++) {
-            _slots.get(i + 1).set(setting.charAt(i));
+            _positions[i + 1] = charIndex(setting.charAt(i));
+            if (_mirrored) {
+                _slots.get(i + 1).set(_positions[i + 1]);
+            }
+        }
+        _schedule = schedule(_positions);
+    }
+
+    /**
+     * Set my rotors to SETTING, where SETTING[i] is the setting of the
+     * rotor in slot i + 1 (the reflector keeps its setting).
+     */
+    void setRotors(int[] setting) {
+        if (setting.length > _positions.length - 1) {
+            throw error("Too many rotor settings");
+        }
+        for (int i = 0; i < setting.length; i++) {
+            _positions[i + 1] = Math.floorMod(setting[i], _plug.length);
+        }
+        _schedule = schedule(_positions);
+        if (_mirrored) {
+            mirrorPositions();
         }
     }
 
@@ -97,19 +197,76 @@ class Machine {
     void setPlugboard(Permutation plugboard) {
 
         this._plugBoard = plugboard;
+        compilePlugboard();
     }
 
     /**
-     * Returns a Reflector with PLUGBOARD as its permutation if a permutation
-     * for the PLUGBOARD is given. Otherwise it returns an empty plug board.
+     * Precomputes the tables used by convert for the rotors now in my
+     * slots, starting from their current settings.  _forward[i] and
+     * _backward[i] hold the conversions of slot i at every setting, so
+     * that entry S * size + C is the result of converting C with the
+     * rotor at setting S.  _notches[i] tells at which settings slot i
+     * advances the slot to its left, so it is all false unless that slot
+     * rotates.
      */
+    private void compileSlots() {
+        int n = _alphabet.size();
+        int k = _slots.size();
+        if (k > Long.SIZE) {
+            throw error("at most %d rotor slots are supported", Long.SIZE);
+        }
+        _rotors = _slots.toArray(new Rotor[k]);
+        _forward = new int[k][];
+        _backward = new int[k][];
+        _notches = new boolean[k][];
+        _rotates = new boolean[k];
+        _positions = new int[k];
+        for (int i = 0; i < k; i += 1) {
+            Rotor rotor = _rotors[i];
+            int[][] wiring = wiring(rotor);
+            _forward[i] = wiring[0];
+            _backward[i] = wiring[1];
+            _rotates[i] = rotor.rotates();
+            _notches[i] = new boolean[n];
+            if (i > 0 && _rotates[i - 1]) {
+                for (int s = 0; s < n; s += 1) {
+                    _notches[i][s] = rotor.atNotch(s);
+                }
+            }
+            _positions[i] = _mirrored ? rotor.setting() : 0;
+        }
+        _schedule = schedule(_positions);
+    }
 
-    private Reflector createPlugBoard() {
-        if (_plugBoard != null) {
-            return new Reflector("Plug Board", _plugBoard);
-        } else {
-            return new Reflector("No Plugboard",
-                    new Permutation("", _alphabet));
+    /**
+     * Returns the forward and backward conversion tables of ROTOR at all
+     * of its settings, computing them the first time they are needed.
+     * Entry S * size + C of each is the conversion of C with ROTOR at
+     * setting S.
+     */
+    int[][] wiring(Rotor rotor) {
+        int[][] result = _wirings.get(rotor);
+        if (result == null) {
+            int n = _alphabet.size();
+            Permutation perm = rotor.permutation();
+            result = new int[][] { new int[n * n], new int[n * n] };
+            for (int s = 0; s < n; s += 1) {
+                perm.shiftedTables(s, result[0], result[1], s * n);
+            }
+            _wirings.put(rotor, result);
+        }
+        return result;
+    }
+
+    /**
+     * Precomputes the plugboard table used by convert.  With no
+     * plugboard, every character maps to itself.
+     */
+    private void compilePlugboard() {
+        int n = _alphabet.size();
+        _plug = new int[n];
+        for (int c = 0; c < n; c += 1) {
+            _plug[c] = _plugBoard == null ? c : _plugBoard.permute(c);
         }
     }
 
@@ -117,15 +274,169 @@ class Machine {
      * Advances the machine according to notch positions for each key entry.
      */
     private void machineAdvance() {
+        _schedule = step(_positions, _schedule);
+        if (_mirrored) {
+            mirrorPositions();
+        }
+    }
 
-        Rotor moving = _slots.get(_slots.size() - 1);
+    /**
+     * Returns the stepping schedule of the slot settings POS: bit i is set
+     * iff slot i is at a notch that advances slot i - 1 on the next step.
+     */
+    private long schedule(int[] pos) {
+        long result = 0;
+        for (int i = 1; i < pos.length; i += 1) {
+            if (_notches[i][pos[i]]) {
+                result |= 1L << i;
+            }
+        }
+        return result;
+    }
 
-        for (int i = _slots.size() - 1; i > 0; i--) {
-            if (_slots.get(i).atNotch()) {
-                _slots.get(i - 1).advance();
+    /**
+     * Advances the slot settings POS, whose stepping schedule is SCHEDULE,
+     * as for one key entry, and returns their new schedule.  Working from
+     * the right, each slot at a notch advances the slot to its left; the
+     * rightmost slot then advances.  A slot advanced this way is checked
+     * for a notch at its new setting, as the loop reaches it.  Only the
+     * bits of slots that move change, and when no slot is at a notch only
+     * the rightmost slot is touched.
+     */
+    private long step(int[] pos, long schedule) {
+        int last = pos.length - 1;
+        int n = _plug.length;
+
+        int i = Long.SIZE - 1 - Long.numberOfLeadingZeros(schedule);
+        while (i > 0) {
+            int left = i - 1;
+            pos[left] = pos[left] + 1 == n ? 0 : pos[left] + 1;
+            if (_notches[left][pos[left]]) {
+                schedule |= 1L << left;
+            } else {
+                schedule &= ~(1L << left);
             }
+            long below = schedule & ((1L << i) - 1);
+            i = Long.SIZE - 1 - Long.numberOfLeadingZeros(below);
+        }
+        if (_rotates[last]) {
+            pos[last] = pos[last] + 1 == n ? 0 : pos[last] + 1;
+            if (_notches[last][pos[last]]) {
+                schedule |= 1L << last;
+            } else {
+                schedule &= ~(1L << last);
+            }
+        }
+        return schedule;
+    }
+
+    /**
+     * Copies my slot settings into the rotors in my slots.
+     */
+    private void mirrorPositions() {
+        for (int i = 0; i < _positions.length; i += 1) {
+            _rotors[i].mirror(_positions[i]);
+        }
+    }
+
+    /**
+     * Advances the machine as if COUNT >= 0 characters had been
+     * converted, with the same notch and double-step behavior.  Rotors to
+     * the left of the leftmost rotating rotor never move, and the
+     * rotating rotors to its right return to their settings after some
+     * period, during which it advances a fixed number of times.  So at
+     * most two periods are ever stepped through, however large COUNT is.
+     */
+    void advance(long count) {
+        if (count < 0) {
+            throw error("cannot advance by %d", count);
+        }
+        int[] pos = _positions;
+        int n = _plug.length;
+        int lowest = 0;
+        while (lowest < pos.length && !_rotates[lowest]) {
+            lowest += 1;
+        }
+        if (count == 0 || lowest == pos.length) {
+            return;
+        }
+
+        int[] start = pos.clone();
+        long schedule = _schedule;
+        long period = 0, moved = 0;
+        do {
+            int before = pos[lowest];
+            schedule = step(pos, schedule);
+            period += 1;
+            if (pos[lowest] != before) {
+                moved += 1;
+            }
+        } while (period < count && !sameSettings(pos, start, lowest + 1));
+
+        if (period < count) {
+            long periods = (count - period) / period;
+            pos[lowest] = (int) ((pos[lowest]
+                    + (periods % n) * (moved % n)) % n);
+            schedule = schedule(pos);
+            for (long r = (count - period) % period; r > 0; r -= 1) {
+                schedule = step(pos, schedule);
+            }
+        }
+        _schedule = schedule;
+        if (_mirrored) {
+            mirrorPositions();
         }
-        moving.advance();
+    }
+
+    /**
+     * Returns the number of advances after which my rotors first return
+     * to their current settings, or -1 if that takes more than LIMIT.
+     * Does not change my settings.
+     */
+    long period(long limit) {
+        int[] pos = _positions.clone();
+        long schedule = _schedule;
+        for (long result = 1; result <= limit; result += 1) {
+            schedule = step(pos, schedule);
+            if (Arrays.equals(pos, _positions)) {
+                return result;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns true iff A and B agree from index FROM onward.
+     */
+    private static boolean sameSettings(int[] a, int[] b, int from) {
+        for (int i = from; i < a.length; i += 1) {
+            if (a[i] != b[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns a new Machine with my configuration, rotors, settings and
+     * plugboard that can be used independently of me (for example, in
+     * another thread).  The copy does not change the settings recorded
+     * in the Rotor objects themselves.
+     */
+    Machine copy() {
+        return new Machine(this);
+    }
+
+    /**
+     * Returns the current settings of my rotors, not counting the
+     * reflector, as a string of the kind accepted by setRotors.
+     */
+    String setting() {
+        StringBuilder result = new StringBuilder();
+        for (int i = 1; i < _positions.length; i += 1) {
+            result.append(_symbols[_positions[i]]);
+        }
+        return result.toString();
     }
 
     /**
@@ -134,32 +445,107 @@ class Machine {
      * the machine.
      */
     int convert(int c) {
-        int converter = 0;
+        return scramble(index(c));
+    }
+
+    /**
+     * Returns the alphabet index denoted by C, which is either an index
+     * already or (if larger than the alphabet size) a character as for
+     * charIndex.
+     */
+    private int index(int c) {
+        int n = _plug.length;
 
-        if (c > _alphabet.size()) {
-            char temp = Character.toUpperCase((char) c);
-            converter = _alphabet.toInt(temp);
+        if (c > n) {
+            return charIndex((char) c);
         } else {
-            converter = c;
+            return Math.floorMod(c, n);
+        }
+    }
+
+    /**
+     * Returns the alphabet index of the character CH, or failing that of
+     * its upper-case form, which must then be in the alphabet.
+     */
+    private int charIndex(char ch) {
+        int result = _alphabet.indexOf(ch);
+        if (result < 0) {
+            result = _alphabet.toInt(Character.toUpperCase(ch));
         }
+        return result;
+    }
 
+    /**
+     * Advances the machine and returns the conversion of the index C,
+     * which must be in the range 0..alphabet size - 1.
+     */
+    private int scramble(int c) {
         machineAdvance();
+        return _plug[rotorPath(_plug[c])];
+    }
 
-        Rotor plugBoard = createPlugBoard();
+    /**
+     * Returns the conversion of C by my rotors alone at their current
+     * settings, from the rightmost rotor to the reflector and back.
+     */
+    private int rotorPath(int c) {
+        int n = _plug.length;
+        int[] pos = _positions;
+        int converter = c;
 
-        converter = plugBoard.convertForward(converter);
+        for (int i = pos.length - 1; i >= 0; i--) {
+            converter = _forward[i][pos[i] * n + converter];
+        }
 
-        for (int i = _slots.size() - 1; i >= 0; i--) {
-            converter = _slots.get(i).convertForward(converter);
+        for (int j = 1; j < pos.length; j++) {
+            converter = _backward[j][pos[j] * n + converter];
         }
 
-        for (int j = 1; j < _slots.size(); j++) {
-            converter = _slots.get(j).convertBackward(converter);
+        return converter;
+    }
+
+    /**
+     * Advances me COUNT times, as if converting COUNT characters, and
+     * returns the permutation applied by my rotors (ignoring the
+     * plugboard) after each advance.  Entry T * size + C of the result
+     * is the conversion of C after the (T+1)st advance.
+     */
+    int[] scramblers(int count) {
+        int n = _plug.length;
+        int[] result = new int[count * n];
+        for (int t = 0; t < count; t++) {
+            machineAdvance();
+            for (int c = 0; c < n; c++) {
+                result[t * n + c] = rotorPath(c);
+            }
         }
+        return result;
+    }
 
-        converter = plugBoard.convertForward(converter);
+    /**
+     * Returns the alphabet indices of the characters of TEXT other than
+     * whitespace, reading them as convert(String) does.
+     */
+    int[] indices(CharSequence text) {
+        int[] result = new int[text.length()];
+        int len = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char ch = text.charAt(i);
+            if (!Character.isWhitespace(ch)) {
+                result[len++] = charIndex(ch);
+            }
+        }
+        return Arrays.copyOf(result, len);
+    }
 
-        return converter;
+    /**
+     * Converts the first LENGTH alphabet indices in MSG, putting the
+     * results in RESULT, as for that many calls to convert(int).
+     */
+    void convert(int[] msg, int[] result, int length) {
+        for (int i = 0; i < length; i++) {
+            result[i] = scramble(msg[i]);
+        }
     }
 
     /**
@@ -167,23 +553,209 @@ class Machine {
      * the rotors accordingly.
      */
     String convert(String msg) {
+        StringBuilder convertedMsg = new StringBuilder(msg.length() * 6 / 5);
+        convert(msg, 0, msg.length(), 0, convertedMsg);
+        return convertedMsg.toString();
+    }
+
+    /**
+     * Converts the characters MSG[START .. END-1], skipping whitespace,
+     * and appends the results to OUT in groups of five separated by
+     * blanks.  COUNT is the number of characters already written to
+     * OUT since the start of the current line, so that a long line may be
+     * converted in pieces.  Returns the new count.  Updates the state of
+     * the rotors accordingly.
+     */
+    int convert(CharSequence msg, int start, int end, int count,
+                Appendable out) {
+        char[] buffer = _outBuffer;
+        int len = 0;
+
+        for (int i = start; i < end; i++) {
+            char ch = msg.charAt(i);
+            if (Character.isWhitespace(ch)) {
+                continue;
+            }
+            if (len + 2 > buffer.length) {
+                write(out, buffer, len);
+                len = 0;
+            }
+            if (count % 5 == 0 && count > 0) {
+                buffer[len++] = ' ';
+            }
+            buffer[len++] = _symbols[scramble(charIndex(ch))];
+            count += 1;
+        }
+        write(out, buffer, len);
+        return count;
+    }
+
+    /**
+     * Converts the bytes IN[START .. END-1], each taken as a character
+     * in the range 0-255, exactly as for convert(CharSequence, int, int,
+     * int, Appendable), putting the result in OUT one byte per
+     * character.  OUT must have room for at least 2 * (END - START)
+     * bytes, and my alphabet must consist of characters in the range
+     * 0-255.  Returns the new count of characters on the current line.
+     */
+    int convert(ByteBuffer in, int start, int end, int count,
+                ByteBuffer out) {
+        for (int i = start; i < end; i++) {
+            char ch = (char) (in.get(i) & 0xff);
+            if (Character.isWhitespace(ch)) {
+                continue;
+            }
+            if (count % 5 == 0 && count > 0) {
+                out.put((byte) ' ');
+            }
+            out.put((byte) _symbols[scramble(charIndex(ch))]);
+            count += 1;
+        }
+        return count;
+    }
+
+    /**
+     * Converts all the remaining bytes of IN, each taken as an alphabet
+     * index from 0 to 255, putting the results in OUT, as for that many
+     * calls to convert(int).  Nothing is skipped, folded or grouped, so
+     * any binary data may be converted, but my alphabet must have exactly
+     * 256 characters (a ByteAlphabet, for example).  The bytes are read
+     * and written in place, without copying, and the positions of IN and
+     * OUT (which may be the same buffer) are advanced past them.
+     */
+    void convertBinary(ByteBuffer in, ByteBuffer out) {
+        if (_plug.length != ByteAlphabet.SIZE) {
+            throw error("binary data needs an alphabet of %d characters",
+                        ByteAlphabet.SIZE);
+        }
+        int len = in.remaining();
+        if (out.remaining() < len) {
+            throw error("no room for converted data");
+        }
+        int from = in.position(), to = out.position();
+        if (in.hasArray() && out.hasArray()) {
+            byte[] src = in.array(), dest = out.array();
+            int i0 = in.arrayOffset() + from, j0 = out.arrayOffset() + to;
+            for (int i = 0; i < len; i++) {
+                dest[j0 + i] = (byte) scrambleByte(src[i0 + i] & BYTE_MASK);
+            }
+        } else {
+            for (int i = 0; i < len; i++) {
+                out.put(to + i,
+                        (byte) scrambleByte(in.get(from + i) & BYTE_MASK));
+            }
+        }
+        in.position(from + len);
+        if (out != in) {
+            out.position(to + len);
+        }
+    }
+
+    /**
+     * Advances the machine and returns the conversion of the byte C, as
+     * scramble(C) would when my alphabet has 256 characters.  Since
+     * settings then wrap at a power of two, each rotor is applied by
+     * shifting into and out of the row of its tables for setting 0,
+     * which keeps the working set to 1 KB per slot rather than the
+     * 256 KB that the full tables take.
+     */
+    private int scrambleByte(int c) {
+        machineAdvance();
+        int[] pos = _positions;
+        int converter = _plug[c];
+
+        for (int i = pos.length - 1; i >= 0; i--) {
+            int k = pos[i];
+            converter = (_forward[i][(converter + k) & BYTE_MASK] - k)
+                & BYTE_MASK;
+        }
 
-        msg = msg.toUpperCase();
-        msg = msg.replaceAll("\\s+", "");
-        String convertedMsg = "";
+        for (int j = 1; j < pos.length; j++) {
+            int k = pos[j];
+            converter = (_backward[j][(converter + k) & BYTE_MASK] - k)
+                & BYTE_MASK;
+        }
 
-        char alphaIndex;
+        return _plug[converter];
+    }
+
+    /**
+     * Return true iff all the characters in my alphabet are in the range
+     * 0-255, so that I can convert single-byte text.
+     */
+    boolean byteAlphabet() {
+        for (char ch : _symbols) {
+            if (ch > 0xff) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Converts all the characters read from IN until it is exhausted,
+     * writing them to OUT.  Each line of IN is converted as for
+     * convert(String) and ends with a newline in OUT, whatever its length.
+     * Uses a fixed amount of memory.
+     */
+    void convert(Reader in, Appendable out) {
+        try {
+            char[] buffer = new char[BUFFER_SIZE];
+            CharBuffer chars = CharBuffer.wrap(buffer);
+            boolean pending = false;
+            int count = 0;
+            int len;
+
+            while ((len = in.read(buffer)) != -1) {
+                int i = 0;
+                while (i < len) {
+                    int end = i;
+                    while (end < len && buffer[end] != '\n') {
+                        end += 1;
+                    }
+                    count = convert(chars, i, end, count, out);
+                    pending = true;
+                    if (end < len) {
+                        out.append('\n');
+                        pending = false;
+                        count = 0;
+                    }
+                    i = end + 1;
+                }
+            }
+            if (pending) {
+                out.append('\n');
+            }
+        } catch (IOException excp) {
+            throw error("could not convert message: %s", excp.getMessage());
+        }
+    }
 
-        for (int i = 0; i < msg.length(); i++) {
-            if (i % 5 == 0 && i > 0) {
-                convertedMsg += " ";
+    /**
+     * Appends the first LEN characters of BUFFER to OUT.
+     */
+    private static void write(Appendable out, char[] buffer, int len) {
+        if (len == 0) {
+            return;
+        }
+        try {
+            if (out instanceof StringBuilder) {
+                ((StringBuilder) out).append(buffer, 0, len);
+            } else if (out instanceof Writer) {
+                ((Writer) out).write(buffer, 0, len);
+            } else {
+                out.append(CharBuffer.wrap(buffer, 0, len));
             }
-            alphaIndex = _alphabet.toChar(convert(msg.charAt(i)));
-            convertedMsg += Character.toString(alphaIndex);
+        } catch (IOException excp) {
+            throw error("could not write message: %s", excp.getMessage());
         }
-        return convertedMsg;
     }
 
+    /**
+     * Size of the buffers used when streaming messages.
+     */
+    static final int BUFFER_SIZE = 1 << 13;
+
     /**
      * Common alphabet of my rotors.
      */
@@ -191,7 +763,7 @@ class Machine {
     /**
      * A hashmap to store ROTORS from Collection ALLROTORS.
      */
-    private HashMap<String, Rotor> _allRotors = new HashMap<>();
+    private HashMap<String, Rotor> _allRotors = new LinkedHashMap<>();
     /**
      * The permutation for PLUGBOARD of this machine.
      */
@@ -208,5 +780,63 @@ class Machine {
      * An ArrayList SLOTS that holds the ROTORS for this for this Machine.
      */
     private ArrayList<Rotor> _slots = new ArrayList<>(_numRotors + 1);
+    /**
+     * The rotors in my slots, as an array.
+     */
+    private Rotor[] _rotors = new Rotor[0];
+    /**
+     * Forward and backward conversion tables for each rotor, by rotor.
+     */
+    private HashMap<Rotor, int[][]> _wirings = new HashMap<>();
+    /**
+     * Mask giving the unsigned value of a byte, and reducing an index
+     * modulo 256.
+     */
+    private static final int BYTE_MASK = 0xff;
+
+    /**
+     * The plugboard as a table from input to output index.
+     */
+    private int[] _plug;
+    /**
+     * Forward conversion tables for each slot, indexed by setting * size +
+     * input.
+     */
+    private int[][] _forward = new int[0][];
+    /**
+     * Backward conversion tables for each slot, indexed as for _forward.
+     */
+    private int[][] _backward = new int[0][];
+    /**
+     * NOTCHES[i][s] is true iff the rotor in slot i, at setting s, is at
+     * a notch that advances the rotor to its left.
+     */
+    private boolean[][] _notches = new boolean[0][];
+    /**
+     * ROTATES[i] is true iff the rotor in slot i can advance.
+     */
+    private boolean[] _rotates = new boolean[0];
+    /**
+     * SYMBOLS[i] is character i of my alphabet.
+     */
+    private char[] _symbols;
+    /**
+     * Holds converted characters on their way to output.
+     */
+    private char[] _outBuffer = new char[BUFFER_SIZE];
+    /**
+     * The current setting of the rotor in each slot.
+     */
+    private int[] _positions = new int[0];
+    /**
+     * The stepping schedule of _positions: bit i is set iff the rotor in
+     * slot i will advance the rotor to its left on the next step.
+     */
+    private long _schedule;
+    /**
+     * True iff changes to _positions are copied into the Rotors in my
+     * slots.  Copies made by copy() leave the shared Rotors alone.
+     */
+    private boolean _mirrored = true;
 
 }
@@ -0,0 +1,107 @@
+package enigma;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** The unchanging configuration of an Enigma machine: its alphabet,
+ *  numbers of slots and pawls, and available rotors, together with the
+ *  conversion tables of all those rotors, computed once.  A MachineSpec
+ *  may be shared by any number of threads, each converting messages with
+ *  its own Machine sessions created from it, borrowed from its pool, or
+ *  kept for the thread by session().  Sessions never change the settings
+ *  recorded in the shared Rotor objects.
+ *  @author josephhayes
+ */
+final class MachineSpec {
+
+    /** The configuration of a machine with alphabet ALPHA, 1 < NUMROTORS
+     *  rotor slots, 0 <= PAWLS < NUMROTORS pawls and the rotors in
+     *  ALLROTORS available. */
+    MachineSpec(Alphabet alpha, int numRotors, int pawls,
+                Collection<Rotor> allRotors) {
+        _template = new Machine(alpha, numRotors, pawls, allRotors);
+        for (Rotor rotor : allRotors) {
+            _template.wiring(rotor);
+        }
+    }
+
+    /** The configuration of MACHINE. */
+    MachineSpec(Machine machine) {
+        this(machine.alphabet(), machine.numRotors(), machine.numPawls(),
+             machine.rotors());
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _template.alphabet();
+    }
+
+    /** Return the number of rotor slots of my machines. */
+    int numRotors() {
+        return _template.numRotors();
+    }
+
+    /** Return the number of pawls of my machines. */
+    int numPawls() {
+        return _template.numPawls();
+    }
+
+    /** Return the rotors available to my machines. */
+    Collection<Rotor> rotors() {
+        return _template.rotors();
+    }
+
+    /** Return a new Machine with my configuration, no rotors inserted and
+     *  no plugboard. */
+    Machine newMachine() {
+        return _template.copy();
+    }
+
+    /** Return this thread's Machine with my configuration, creating it
+     *  the first time.  It keeps whatever rotors, settings and plugboard
+     *  it was last given. */
+    Machine session() {
+        return _sessions.get();
+    }
+
+    /** Return a Machine with my configuration that no one else is using,
+     *  reusing the one most recently given to release() if possible, since
+     *  its tables are likeliest to be in cache.  Its rotors, settings
+     *  and plugboard are whatever they were when released, so callers
+     *  should set all three. */
+    Machine borrow() {
+        Machine result = _pool.poll();
+        if (result == null) {
+            return newMachine();
+        }
+        _pooled.decrementAndGet();
+        return result;
+    }
+
+    /** Return MACHINE, which must have come from borrow() and no longer
+     *  be in use, to my pool. */
+    void release(Machine machine) {
+        if (_pooled.incrementAndGet() <= MAX_POOLED) {
+            _pool.push(machine);
+        } else {
+            _pooled.decrementAndGet();
+        }
+    }
+
+    /** Most Machines kept for borrow() at once. */
+    private static final int MAX_POOLED = 256;
+
+    /** A machine with my configuration whose tables for every rotor have
+     *  been computed.  It is never changed after construction, so copies
+     *  of it can be made by any thread. */
+    private final Machine _template;
+    /** Machines returned by release(), most recent first. */
+    private final ConcurrentLinkedDeque<Machine> _pool =
+        new ConcurrentLinkedDeque<>();
+    /** Number of Machines in _pool. */
+    private final AtomicInteger _pooled = new AtomicInteger();
+    /** The Machine of each thread that calls session(). */
+    private final ThreadLocal<Machine> _sessions =
+        ThreadLocal.withInitial(this::newMachine);
+}
@@ -1,7 +1,9 @@
 package enigma;
 import org.junit.Test;
 import static org.junit.Assert.*;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Random;
 import static enigma.TestUtils.*;
 
 public class MachineTest {
@@ -188,4 +190,402 @@ public class MachineTest {
         setMachine(enigmaCarrol2, rotorSetA, setting);
     }
 
+    @Test
+    public void longRoundTripTest() {
+        createRotorSet();
+        String[] rotorSet = {"B", "BETA", "III", "IV", "I"};
+        Permutation plugBoard = new Permutation("(HQ) (EX) (IP) (TR)", alpha);
+        StringBuilder msg = new StringBuilder();
+        for (int k = 0; k < 20000; k += 1) {
+            msg.append(UPPER_STRING.charAt((k * 7 + k / 26) % 26));
+        }
+
+        Machine enigma = new Machine(alpha, 5, 3, allRotors);
+        setMachine(enigma, rotorSet, "AXLE", plugBoard);
+        String cipher = enigma.convert(msg.toString());
+        setMachine(enigma, rotorSet, "AXLE", plugBoard);
+        assertEquals(enigma.convert(msg.toString()), cipher);
+        setMachine(enigma, rotorSet, "AXLE", plugBoard);
+        assertEquals(enigma.convert(cipher).replace(" ", ""),
+                msg.toString());
+    }
+
+    @Test
+    public void streamingTest() {
+        createRotorSet();
+        String[] rotorSet = {"B", "BETA", "III", "IV", "I"};
+        Permutation plugBoard = new Permutation("(HQ) (EX) (IP) (TR) (BY)",
+                alpha);
+        Machine enigma = new Machine(alpha, 5, 3, allRotors);
+        setMachine(enigma, rotorSet, "AXLE", plugBoard);
+
+        StringBuilder out = new StringBuilder();
+        enigma.convert(new java.io.StringReader("FROM his shoulder Hiawatha\n"
+                + "\nTook the camera of rosewood"), out);
+        assertEquals("QVPQS OKOIL PUBKJ ZPISF XDW\n\n"
+                + "BHCNS CXNUO AATZX SRCFY DGU\n", out.toString());
+
+        setMachine(enigma, rotorSet, "AXLE", plugBoard);
+        out = new StringBuilder();
+        String msg = "FROM his shoulder Hiawatha";
+        int count = enigma.convert(msg, 0, 7, 0, out);
+        count = enigma.convert(msg, 7, msg.length(), count, out);
+        assertEquals(23, count);
+        assertEquals("QVPQS OKOIL PUBKJ ZPISF XDW", out.toString());
+    }
+
+    /** Check that advancing a copy of ENIGMA by each of COUNTS gives the
+     *  same settings and conversions as converting that many characters
+     *  with another copy. */
+    private void checkAdvance(Machine enigma, long... counts) {
+        for (long count : counts) {
+            Machine stepped = enigma.copy(), jumped = enigma.copy();
+            for (long k = 0; k < count; k += 1) {
+                stepped.convert(0);
+            }
+            jumped.advance(count);
+            assertEquals("advance " + count, stepped.setting(),
+                    jumped.setting());
+            for (int c = 0; c < 100; c += 1) {
+                assertEquals(stepped.convert(c % 4), jumped.convert(c % 4));
+            }
+        }
+    }
+
+    @Test
+    public void advanceTest() {
+        createRotorSet();
+        String[] rotorSet = {"B", "BETA", "III", "IV", "I"};
+        Machine enigma = new Machine(alpha, 5, 3, allRotors);
+        setMachine(enigma, rotorSet, "AXLE");
+        checkAdvance(enigma, 0, 1, 5, 26, 27, 650, 677, 17577, 123457);
+        setMachine(enigma, rotorSet, "AEDP");
+        checkAdvance(enigma, 3, 100, 5000, 45678);
+
+        Alphabet ad = new CharacterRange('A', 'D');
+        ArrayList<Rotor> small = new ArrayList<>();
+        small.add(new Reflector("R1", new Permutation("(AC) (BD)", ad)));
+        small.add(new MovingRotor("R2", new Permutation("(ABCD)", ad), "C"));
+        small.add(new MovingRotor("R3", new Permutation("(ABCD)", ad), "BC"));
+        small.add(new MovingRotor("R4", new Permutation("(ABCD)", ad), "C"));
+        Machine cascade = new Machine(ad, 4, 3, small);
+        cascade.insertRotors(new String[] {"R1", "R2", "R3", "R4"});
+        cascade.setRotors("AAB");
+        checkAdvance(cascade, 1, 2, 3, 7, 15, 16, 17, 63, 64, 1001);
+    }
+
+    @Test
+    public void steppingScheduleTest() {
+        Alphabet ad = new CharacterRange('A', 'D');
+        String[] notches = {"", "BD", "ABC", "C", "D"};
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("R", new Permutation("(AC) (BD)", ad)));
+        rotors.add(new FixedRotor("F", new Permutation("(AB)", ad)));
+        for (int i = 2; i < notches.length; i += 1) {
+            rotors.add(new MovingRotor("M" + i,
+                    new Permutation("(ABCD)", ad), notches[i]));
+        }
+        Machine enigma = new Machine(ad, 5, 3, rotors);
+        enigma.insertRotors(new String[] {"R", "F", "M2", "M3", "M4"});
+        for (String start : new String[] {"AAAA", "ACBC", "ADDD"}) {
+            enigma.setRotors(start);
+            int[] pos = new int[5];
+            for (int i = 1; i < 5; i += 1) {
+                pos[i] = start.charAt(i - 1) - 'A';
+            }
+            for (int k = 0; k < 200; k += 1) {
+                for (int i = 4; i > 2; i -= 1) {
+                    if (notches[i].indexOf((char) ('A' + pos[i])) >= 0) {
+                        pos[i - 1] = (pos[i - 1] + 1) % 4;
+                    }
+                }
+                pos[4] = (pos[4] + 1) % 4;
+                enigma.convert(0);
+                StringBuilder expected = new StringBuilder();
+                for (int i = 1; i < 5; i += 1) {
+                    expected.append((char) ('A' + pos[i]));
+                }
+                assertEquals(start + " step " + k, expected.toString(),
+                        enigma.setting());
+            }
+        }
+    }
+
+    @Test
+    public void copyTest() {
+        createRotorSet();
+        String[] rotorSet = {"B", "BETA", "III", "IV", "I"};
+        Machine enigma = new Machine(alpha, 5, 3, allRotors);
+        setMachine(enigma, rotorSet, "AXLE");
+        Machine other = enigma.copy();
+        assertEquals("HYIHL BKOML IUYDC MPPSF SZW",
+                other.convert("FROM his shoulder Hiawatha"));
+        assertEquals("AXLE", enigma.setting());
+        assertEquals(alpha.toInt('E'), i.setting());
+        assertEquals("HYIHL BKOML IUYDC MPPSF SZW",
+                enigma.convert("FROM his shoulder Hiawatha"));
+    }
+
+    @Test
+    public void parallelTest() {
+        createRotorSet();
+        String[] rotorSet = {"B", "BETA", "III", "IV", "I"};
+        Permutation plugBoard = new Permutation("(HQ) (EX) (IP)", alpha);
+        Machine enigma = new Machine(alpha, 5, 3, allRotors);
+        setMachine(enigma, rotorSet, "AXLE", plugBoard);
+        StringBuilder text = new StringBuilder("EXTRA\n");
+        for (int k = 0; k < 300000; k += 1) {
+            text.append(k % 101 == 0 ? '\n' : k % 7 == 0 ? ' ' : 'Q');
+        }
+
+        Machine sequential = enigma.copy();
+        StringBuilder expected = new StringBuilder();
+        int count = sequential.convert("ABC", 0, 3, 0, expected);
+        String[] lines = text.toString().split("\n", -1);
+        for (int k = 0; k < lines.length; k += 1) {
+            count = sequential.convert(lines[k], 0, lines[k].length(),
+                    count, expected);
+            if (k < lines.length - 1) {
+                expected.append('\n');
+                count = 0;
+            }
+        }
+
+        ParallelConverter converter = new ParallelConverter(3);
+        StringBuilder actual = new StringBuilder();
+        count = enigma.convert("ABC", 0, 3, 0, actual);
+        count = converter.convert(enigma, text, count, actual);
+        converter.shutdown();
+        assertEquals(expected.toString(), actual.toString());
+        assertEquals(sequential.setting(), enigma.setting());
+        assertEquals(sequential.convert("HELLO"), enigma.convert("HELLO"));
+    }
+
+    @Test
+    public void byteTextTest() {
+        createRotorSet();
+        String[] rotorSet = {"B", "BETA", "III", "IV", "I"};
+        Permutation plugBoard = new Permutation("(HQ) (EX) (IP) (TR) (BY)",
+                alpha);
+        Machine enigma = new Machine(alpha, 5, 3, allRotors);
+        setMachine(enigma, rotorSet, "AXLE", plugBoard);
+        assertTrue(enigma.byteAlphabet());
+
+        byte[] msg = "FROM his shoulder Hiawatha".getBytes();
+        java.nio.ByteBuffer out = java.nio.ByteBuffer.allocate(2 * msg.length);
+        int count = enigma.convert(java.nio.ByteBuffer.wrap(msg), 0,
+                msg.length, 0, out);
+        assertEquals(23, count);
+        assertEquals("QVPQS OKOIL PUBKJ ZPISF XDW",
+                new String(out.array(), 0, out.position()));
+    }
+
+    @Test
+    public void batchTest() {
+        createRotorSet();
+        Machine enigma = new Machine(alpha, 5, 3, allRotors);
+        String[][] orders = {
+            {"B", "BETA", "III", "IV", "I"},
+            {"C", "GAMMA", "VI", "VII", "VIII"},
+            {"B", "GAMMA", "V", "I", "II"},
+        };
+        String[] plugs = {"", "(HQ) (EX) (IP)", "(AZ) (BY) (CX) (DW)"};
+        BatchMachine batch = new BatchMachine(enigma, 12);
+        int[][] messages = new int[12][];
+        int[][] expected = new int[12][];
+        String[] settings = new String[12];
+        for (int m = 0; m < 12; m += 1) {
+            Candidate key = new Candidate(orders[m % 3],
+                    "" + (char) ('A' + m) + "QE" + (char) ('Z' - m),
+                    plugs[m % 3], 0.0);
+            assertEquals(m, batch.add(key));
+            messages[m] = new int[100 + 37 * m];
+            for (int t = 0; t < messages[m].length; t += 1) {
+                messages[m][t] = (t * 7 + m) % 26;
+            }
+            Machine single = enigma.copy();
+            key.setUp(single);
+            expected[m] = new int[messages[m].length];
+            single.convert(messages[m], expected[m], messages[m].length);
+            settings[m] = single.setting();
+        }
+        batch.convert(messages);
+        for (int m = 0; m < 12; m += 1) {
+            assertArrayEquals(expected[m], messages[m]);
+            assertEquals(settings[m], batch.setting(m));
+        }
+    }
+
+    @Test
+    public void specTest() throws InterruptedException {
+        createRotorSet();
+        MachineSpec spec = new MachineSpec(alpha, 5, 3, allRotors);
+        Permutation plugBoard = new Permutation("(HQ) (EX) (IP)", alpha);
+        String[] rotorSet = {"B", "BETA", "III", "IV", "I"};
+        Machine enigma = new Machine(alpha, 5, 3, allRotors);
+        setMachine(enigma, rotorSet, "AXLE", plugBoard);
+        String expected = enigma.copy().convert("FROM his shoulder Hiawatha");
+        int before = i.setting();
+
+        String[] results = new String[4];
+        Machine[][] sessions = new Machine[results.length][2];
+        Throwable[] failures = new Throwable[results.length];
+        Thread[] threads = new Thread[results.length];
+        for (int k = 0; k < threads.length; k += 1) {
+            final int which = k;
+            threads[k] = new Thread(() -> {
+                try {
+                    for (int trial = 0; trial < 50; trial += 1) {
+                        Machine session = spec.borrow();
+                        setMachine(session, rotorSet, "AXLE", plugBoard);
+                        results[which] = session.convert("FROM his "
+                                + "shoulder Hiawatha");
+                        spec.release(session);
+                    }
+                    sessions[which][0] = spec.session();
+                    sessions[which][1] = spec.session();
+                } catch (Throwable excp) {
+                    failures[which] = excp;
+                }
+            });
+            threads[k].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (int k = 0; k < threads.length; k += 1) {
+            assertNull("thread " + k + " failed: " + failures[k],
+                    failures[k]);
+            assertEquals(expected, results[k]);
+            assertNotNull(sessions[k][0]);
+            assertSame(sessions[k][0], sessions[k][1]);
+            if (k > 0) {
+                assertNotSame(sessions[k - 1][0], sessions[k][0]);
+            }
+        }
+        assertEquals(before, i.setting());
+
+        Machine borrowed = spec.borrow();
+        spec.release(borrowed);
+        assertSame(borrowed, spec.borrow());
+        assertNotSame(borrowed, spec.newMachine());
+    }
+
+    @Test
+    public void keystreamTest() {
+        createRotorSet();
+        MachineSpec spec = new MachineSpec(alpha, 5, 3, allRotors);
+        long budget = 2 * 26 * 26 * 26 + 100;
+        KeystreamCache cache = new KeystreamCache(spec, budget);
+        Candidate key = Candidate.parse(
+                "* B BETA III IV I AXLE (HQ) (EX) (IP)", 5);
+        KeystreamCache.Keystream stream = cache.get(key);
+        assertEquals(26 * 26, stream.period());
+        assertEquals(26 * stream.period(), cache.bytes());
+
+        Machine enigma = spec.newMachine();
+        key.setUp(enigma);
+        int[] msg = new int[40000];
+        for (int t = 0; t < msg.length; t += 1) {
+            msg[t] = (t * 11) % 26;
+        }
+        int[] expected = new int[msg.length];
+        enigma.convert(msg, expected, msg.length);
+        int[] actual = new int[msg.length];
+        stream.convert(msg, actual, msg.length);
+        assertArrayEquals(expected, actual);
+        assertEquals("HYIHL BKOML IUYDC MPPSF SZW",
+                cache.get(Candidate.parse("* B BETA III IV I AXLE", 5))
+                .convert("FROM his shoulder Hiawatha"));
+
+        assertSame(stream, cache.get(key));
+        assertEquals(2, cache.size());
+        cache.get(Candidate.parse("* C GAMMA I II III AAAA", 5));
+        assertEquals(2, cache.size());
+        assertSame(stream, cache.get(key));
+        assertEquals(2, cache.hits());
+        assertEquals(3, cache.misses());
+        assertTrue(cache.bytes() <= budget);
+
+        KeystreamCache small = new KeystreamCache(spec, 26 * 100);
+        KeystreamCache.Keystream uncached = small.get(key);
+        assertEquals(-1, uncached.period());
+        assertEquals(0, small.bytes());
+        assertEquals(0, small.size());
+        uncached.convert(msg, actual, msg.length);
+        assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    public void symbolAlphabetTest() {
+        createRotorSet();
+        Alphabet letters = new SymbolAlphabet(UPPER_STRING);
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("B", new Permutation(NAVALA.get("B"),
+                                                      letters)));
+        rotors.add(new Rotor("BETA", new Permutation(NAVALA.get("Beta"),
+                                                     letters)));
+        rotors.add(new MovingRotor("III", new Permutation(NAVALA.get("III"),
+                                                          letters), "V"));
+        rotors.add(new MovingRotor("IV", new Permutation(NAVALA.get("IV"),
+                                                         letters), "J"));
+        rotors.add(new MovingRotor("I", new Permutation(NAVALA.get("I"),
+                                                        letters), "Q"));
+        String[] rotorSet = {"B", "BETA", "III", "IV", "I"};
+        Machine enigma = new Machine(letters, 5, 3, rotors);
+        setMachine(enigma, rotorSet, "axle");
+        assertEquals("HYIHL BKOML IUYDC MPPSF SZW",
+                enigma.convert("FROM his shoulder Hiawatha"));
+
+        Alphabet symbols = new SymbolAlphabet("0123456789.,?!");
+        ArrayList<Rotor> small = new ArrayList<>();
+        small.add(new Reflector("R", new Permutation(
+                "(01) (23) (45) (67) (89) (.,) (?!)", symbols)));
+        small.add(new MovingRotor("S", new Permutation("(0.1?2!39)",
+                                                       symbols), "?"));
+        small.add(new MovingRotor("T", new Permutation("(,4812)(5!)",
+                                                       symbols), "0"));
+        Machine digits = new Machine(symbols, 3, 2, small);
+        setMachine(digits, new String[] {"R", "S", "T"}, "?9",
+                   new Permutation("(0!)", symbols));
+        String code = digits.convert("3.14159 26535, 89793?!");
+        assertFalse(code.equals("3.141 59265 35,89 793?!"));
+        setMachine(digits, new String[] {"R", "S", "T"}, "?9");
+        digits.setPlugboard(new Permutation("(0!)", symbols));
+        assertEquals("3.141 59265 35,89 793?!", digits.convert(code));
+    }
+
+    @Test
+    public void binaryTest() {
+        Machine enigma = Benchmark.byteMachine(5, 3, new Random(61));
+        enigma.insertRotors(enigma.defaultRotors());
+        Machine start = enigma.copy();
+        byte[] data = new byte[3000];
+        new Random(17).nextBytes(data);
+        int[] expected = new int[data.length];
+        Machine reference = start.copy();
+        for (int i = 0; i < data.length; i += 1) {
+            expected[i] = reference.convert(data[i] & 0xff);
+        }
+
+        ByteBuffer heap = ByteBuffer.wrap(data.clone());
+        ByteBuffer code = ByteBuffer.allocate(data.length);
+        start.copy().convertBinary(heap, code);
+        assertFalse(heap.hasRemaining());
+        assertFalse(code.hasRemaining());
+        for (int i = 0; i < data.length; i += 1) {
+            assertEquals(expected[i], code.get(i) & 0xff);
+        }
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+        direct.put(code.array()).flip();
+        Machine decoder = start.copy();
+        decoder.convertBinary(direct, direct);
+        assertEquals(data.length, direct.position());
+        for (int i = 0; i < data.length; i += 1) {
+            assertEquals(data[i], direct.get(i));
+        }
+        assertEquals(reference.setting(), decoder.setting());
+    }
+
 }
@@ -1,8 +1,24 @@
 package enigma;
 
-import java.io.File;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.FileReader;
+import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
 
 import static enigma.EnigmaException.*;
@@ -24,10 +40,25 @@ public final class Main {
      * file for processed messages.  Otherwise, output goes to the
      * standard output. Exits normally if there are no errors in the input;
      * otherwise with code 1.
+     * ARGS may begin with options:
+     *   --threads N  converts each message on N threads at once.
+     *   --bulk       maps the input file into memory and writes the output
+     *                file through a channel; both files must be named and
+     *                contain single-byte characters.
+     *   --pipeline   reads input and writes output on threads of their
+     *                own, so that they overlap with conversion.
+     *   --stats N    counts characters, messages and settings lines and
+     *                times each stage of processing, printing a summary
+     *                to the standard error every N seconds and at the
+     *                end, and publishing the counts over JMX (see Stats).
+     *   --compile    saves the configuration in compiled form next to
+     *                ARGS[0] (see CompiledConfig).  Whenever a compiled
+     *                form that matches ARGS[0] exists, it is used instead
+     *                of parsing ARGS[0].
      */
     public static void main(String... args) {
         try {
-            new Main(args).process();
+            run(args);
             return;
         } catch (EnigmaException excp) {
             System.err.printf("Error: %s%n", excp.getMessage());
@@ -35,52 +66,180 @@ public final class Main {
         System.exit(1);
     }
 
+    /**
+     * Process ARGS as main does, but without exiting: returns normally
+     * where main would exit normally, and throws an EnigmaException
+     * where main would report an error.  Files that it opens are closed
+     * before it returns, so it may be called many times in one JVM.
+     */
+    static void run(String... args) {
+        new Main(args).process();
+    }
+
     /**
      * Check ARGS and open the necessary files (see comment on main).
      * Format of ARGS[0], ARGS[1], ARGS[2].
      */
     Main(String[] args) {
+        args = parseOptions(args);
         if (args.length < 1 || args.length > 3) {
             throw error("Only 1, 2, or 3 command-line arguments allowed");
         }
 
-        _config = getInput(args[0]);
+        _configFile = Paths.get(args[0]);
+        try {
+            _configText = Files.readAllBytes(_configFile);
+        } catch (IOException excp) {
+            throw error("could not open %s", args[0]);
+        }
+
+        if (_bulk) {
+            if (args.length != 3 || _threads > 1 || _pipeline) {
+                throw error("--bulk needs input and output files and "
+                        + "one thread, without --pipeline");
+            }
+            _inChannel = getChannel(args[1], StandardOpenOption.READ);
+            _outChannel = getChannel(args[2], StandardOpenOption.WRITE,
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            _bulkOut = ByteBuffer.allocateDirect(BULK_OUTPUT);
+            return;
+        }
 
         if (args.length > 1) {
-            _input = getInput(args[1]);
+            _input = getReader(args[1]);
         } else {
-            _input = new Scanner(System.in);
+            _input = new InputStreamReader(System.in);
         }
 
         if (args.length > 2) {
             _output = getOutput(args[2]);
         } else {
-            _output = System.out;
+            _output = new BufferedWriter(new OutputStreamWriter(System.out));
+        }
+
+        if (_pipeline) {
+            _input = Pipeline.reader(_input);
+            _output = Pipeline.writer(_output);
+            _opened.add(_input);
+            if (args.length > 2) {
+                _opened.add(_output);
+            }
+        }
+        if (_stats != null) {
+            _input = _stats.timed(_input);
+            _output = _stats.timed(_output);
+        }
+    }
+
+    /**
+     * Record the options at the start of ARGS and return the remaining
+     * arguments.
+     */
+    private String[] parseOptions(String[] args) {
+        int k;
+        for (k = 0; k < args.length && args[k].startsWith("--"); k += 1) {
+            switch (args[k]) {
+            case "--threads":
+                k += 1;
+                _threads = parseCount(args, k);
+                break;
+            case "--bulk":
+                _bulk = true;
+                break;
+            case "--compile":
+                _compile = true;
+                break;
+            case "--pipeline":
+                _pipeline = true;
+                break;
+            case "--stats":
+                k += 1;
+                _statsPeriod = parseCount(args, k);
+                _stats = new Stats();
+                break;
+            default:
+                throw error("unknown option: %s", args[k]);
+            }
         }
+        return Arrays.copyOfRange(args, k, args.length);
     }
 
     /**
-     * Return a Scanner reading from the file named NAME.
+     * Return ARGS[K] as a positive integer.
      */
-    private Scanner getInput(String name) {
+    private int parseCount(String[] args, int k) {
         try {
-            return new Scanner(new File(name));
+            int result = Integer.parseInt(args[k]);
+            if (result > 0) {
+                return result;
+            }
+        } catch (NumberFormatException | IndexOutOfBoundsException excp) {
+            /* Reported below. */
+        }
+        throw error("%s needs a positive number", args[k - 1]);
+    }
+
+    /**
+     * Return a Reader reading from the file named NAME.
+     */
+    private Reader getReader(String name) {
+        try {
+            return opened(new FileReader(name));
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /**
+     * Return a channel for the file named NAME, opened with OPTIONS.
+     */
+    private FileChannel getChannel(String name, OpenOption... options) {
+        try {
+            return opened(FileChannel.open(Paths.get(name), options));
         } catch (IOException excp) {
             throw error("could not open %s", name);
         }
     }
 
     /**
-     * Return a PrintStream writing to the file named NAME.
+     * Return a Writer writing to the file named NAME.
      */
-    private PrintStream getOutput(String name) {
+    private Writer getOutput(String name) {
         try {
-            return new PrintStream(new File(name));
+            return opened(new BufferedWriter(new FileWriter(name)));
         } catch (IOException excp) {
             throw error("could not open %s", name);
         }
     }
 
+    /**
+     * Record that FILE is to be closed when processing ends, and return
+     * it.
+     */
+    private <T extends Closeable> T opened(T file) {
+        _opened.add(file);
+        return file;
+    }
+
+    /**
+     * Close everything recorded by opened, most recently opened first.
+     */
+    private void closeFiles() {
+        IOException failure = null;
+        for (int k = _opened.size() - 1; k >= 0; k -= 1) {
+            try {
+                _opened.get(k).close();
+            } catch (IOException excp) {
+                failure = excp;
+            }
+        }
+        _opened.clear();
+        if (failure != null) {
+            throw error("could not close files: %s", failure.getMessage());
+        }
+    }
+
     /**
      * Configure an Enigma machine from the contents of configuration
      * file _config and apply it to the messages in _input, sending the
@@ -88,94 +247,357 @@ public final class Main {
      */
     private void process() throws EnigmaException {
         try {
-            String currentLine;
-            String inputConfig;
-            _theEnigma = readConfig();
-
-            while (_input.hasNextLine()) { //FIXME need to check for * on first line
-
-                currentLine = _input.nextLine().trim();
+            if (_stats != null) {
+                _stats.register();
+                _stats.startReports(_statsPeriod, System.err);
+                long start = System.nanoTime();
+                _theEnigma = readConfig();
+                _stats.configRead(System.nanoTime() - start);
+            } else {
+                _theEnigma = readConfig();
+            }
+            if (_threads > 1) {
+                _parallel = new ParallelConverter(_threads);
+            }
+            if (_bulk) {
+                processBulk();
+            } else {
+                processInput();
+            }
+        } catch (IOException excp) {
+            throw error("could not process input: %s", excp.getMessage());
+        } catch (NoSuchElementException | IndexOutOfBoundsException excp) {
+            /* Stop quietly, keeping what has been converted so far. */
+        } finally {
+            if (_parallel != null) {
+                _parallel.shutdown();
+            }
+            try {
+                finish();
+            } finally {
+                closeFiles();
+            }
+        }
+    }
 
-                if (currentLine.contains("*")) {
-                    inputConfig = currentLine;
-                    setUp(_theEnigma, inputConfig);
-                    currentLine = _input.nextLine();
+    /**
+     * Read _input in blocks, treating lines whose first non-blank
+     * character is '*' as settings for _theEnigma and converting all
+     * other lines to _output, one output line per input line.  Message
+     * lines are streamed through the machine, so their length is not
+     * limited by memory.  With more than one thread, message text is
+     * instead gathered into blocks that are converted in parallel.
+     */
+    private void processInput() throws IOException {
+        char[] buffer = new char[Machine.BUFFER_SIZE];
+        CharBuffer chars = CharBuffer.wrap(buffer);
+        StringBuilder settings = null;
+        boolean lineStart = true;
+        int count = 0;
+        int len;
+
+        while ((len = _input.read(buffer)) != -1) {
+            int i = 0;
+            while (i < len) {
+                int end = i;
+                while (end < len && buffer[end] != '\n') {
+                    end += 1;
                 }
-                if (currentLine.contains("*")) { //FIXME takes care of format2.inp error SLOPPY
-                    currentLine = _input.next();
+                if (lineStart) {
+                    while (i < end && Character.isWhitespace(buffer[i])) {
+                        i += 1;
+                    }
+                    if (i == end && end == len) {
+                        continue;
+                    }
+                    lineStart = false;
+                    if (i < end && buffer[i] == '*') {
+                        settings = new StringBuilder();
+                    } else if (i < end && !_configured) {
+                        throw error("No configuration in file. ");
+                    }
                 }
-                _output.append(_theEnigma.convert(currentLine) + "\n");
+                if (settings != null) {
+                    settings.append(buffer, i, end - i);
+                } else if (_parallel != null) {
+                    _batch.append(buffer, i, end - i);
+                    if (_batch.length() >= BATCH_SIZE) {
+                        convertBatch();
+                    }
+                } else if (_stats != null) {
+                    long start = _stats.start();
+                    int before = count;
+                    count = _theEnigma.convert(chars, i, end, count, _output);
+                    _stats.converted(count - before, start);
+                } else {
+                    count = _theEnigma.convert(chars, i, end, count, _output);
+                }
+                if (end < len) {
+                    endLine(settings);
+                    settings = null;
+                    lineStart = true;
+                    count = 0;
+                }
+                i = end + 1;
             }
-        } catch (NoSuchElementException excp) {
-            System.exit(0);
-        } catch (IndexOutOfBoundsException excp) {
-            System.exit(0);
         }
+        if (!lineStart) {
+            endLine(settings);
+        }
+        convertBatch();
     }
-    /** A method for pulling apart my INPUT. */
-    private void processInput() throws EnigmaException {
-        //IDEA: take the string from process() and make the decisions here.
-        String currentLine;
-        String inputConfig;
 
-            currentLine = _input.nextLine();
+    /**
+     * Process the input as for processInput, but taking each byte of
+     * _inChannel as one character.  The input is mapped into memory a
+     * window at a time and read in place, and the output is gathered in
+     * a direct buffer that is written to _outChannel.
+     */
+    private void processBulk() throws IOException {
+        if (!_theEnigma.byteAlphabet()) {
+            throw error("--bulk needs an alphabet of single-byte characters");
+        }
+        long size = _inChannel.size();
+        StringBuilder settings = null;
+        boolean lineStart = true;
+        int count = 0;
+
+        for (long base = 0; base < size; base += BULK_WINDOW) {
+            int len = (int) Math.min(BULK_WINDOW, size - base);
+            MappedByteBuffer window =
+                _inChannel.map(FileChannel.MapMode.READ_ONLY, base, len);
+            int i = 0;
+            while (i < len) {
+                int end = i;
+                while (end < len && window.get(end) != '\n') {
+                    end += 1;
+                }
+                if (lineStart) {
+                    while (i < end && Character.isWhitespace(
+                            (char) (window.get(i) & 0xff))) {
+                        i += 1;
+                    }
+                    if (i == end && end == len) {
+                        continue;
+                    }
+                    lineStart = false;
+                    if (i < end && window.get(i) == '*') {
+                        settings = new StringBuilder();
+                    } else if (i < end && !_configured) {
+                        throw error("No configuration in file. ");
+                    }
+                }
+                if (settings != null) {
+                    for (int k = i; k < end; k += 1) {
+                        settings.append((char) (window.get(k) & 0xff));
+                    }
+                } else {
+                    for (int from = i; from < end; from += BULK_SLICE) {
+                        int to = Math.min(end, from + BULK_SLICE);
+                        reserve(2 * (to - from));
+                        long start = _stats == null ? 0 : _stats.start();
+                        int before = count;
+                        count = _theEnigma.convert(window, from, to, count,
+                                _bulkOut);
+                        if (_stats != null) {
+                            _stats.converted(count - before, start);
+                        }
+                    }
+                }
+                if (end < len) {
+                    endLine(settings);
+                    settings = null;
+                    lineStart = true;
+                    count = 0;
+                }
+                i = end + 1;
+            }
+        }
+        if (!lineStart) {
+            endLine(settings);
+        }
+    }
 
-            if (currentLine.contains("*")) { //set the rotor setting
+    /**
+     * Make sure that _bulkOut has room for at least SIZE more bytes,
+     * writing out its contents if necessary.
+     */
+    private void reserve(int size) throws IOException {
+        if (_bulkOut.remaining() < size) {
+            drainBulkOutput();
+        }
+    }
 
+    /**
+     * Write the contents of _bulkOut to _outChannel and empty it.
+     */
+    private void drainBulkOutput() throws IOException {
+        long start = System.nanoTime();
+        _bulkOut.flip();
+        while (_bulkOut.hasRemaining()) {
+            _outChannel.write(_bulkOut);
+        }
+        _bulkOut.clear();
+        if (_stats != null) {
+            _stats.output(System.nanoTime() - start);
+        }
+    }
 
+    /**
+     * Finish the current input line: apply SETTINGS to _theEnigma if it
+     * is not null and otherwise end the current output line.
+     */
+    private void endLine(StringBuilder settings) throws IOException {
+        if (settings != null) {
+            convertBatch();
+            long start = System.nanoTime();
+            setUp(_theEnigma, settings.toString());
+            if (_stats != null) {
+                _stats.setUp(System.nanoTime() - start);
             }
+            _configured = true;
+            return;
+        }
+        if (_stats != null) {
+            _stats.message();
+        }
+        if (_parallel != null) {
+            _batch.append('\n');
+        } else if (_bulk) {
+            reserve(1);
+            _bulkOut.put((byte) '\n');
+        } else {
+            _output.write('\n');
+        }
     }
 
     /**
-     * Return an Enigma machine configured from the contents of configuration
-     * file _config.
+     * Convert and write out the message text gathered in _batch, if any.
      */
-    private Machine readConfig() {
-        try {
-            String getAlpha = _config.nextLine().trim();
-
-            _alphabet = new CharacterRange(getAlpha.charAt(0),
-                    getAlpha.charAt(2));
-            _numRotors = Integer.parseInt(_config.next());
-            _numPawls = Integer.parseInt(_config.next());
+    private void convertBatch() {
+        if (_batch.length() > 0) {
+            long start = _stats == null ? 0 : _stats.start();
+            _batchCount = _parallel.convert(_theEnigma, _batch, _batchCount,
+                    _output);
+            if (_stats != null) {
+                _stats.converted(letters(_batch), start);
+            }
+            _batch.setLength(0);
+        }
+    }
 
-            while (_config.hasNextLine()) {
-                _allRotors.add(readRotor());
+    /**
+     * Return the number of characters in TEXT that are not whitespace.
+     */
+    private static long letters(CharSequence text) {
+        long result = 0;
+        for (int i = 0; i < text.length(); i += 1) {
+            if (!Character.isWhitespace(text.charAt(i))) {
+                result += 1;
             }
-            return new Machine(_alphabet, _numRotors, _numPawls, _allRotors);
+        }
+        return result;
+    }
 
-        } catch (NoSuchElementException excp) {
-            throw error("configuration file truncated");
+    /**
+     * Write out what has been converted so far, and the final statistics
+     * if they are being kept, stopping their reports.
+     */
+    private void finish() {
+        try {
+            flushOutput();
+        } finally {
+            if (_stats != null) {
+                _stats.close();
+                System.err.println(_stats.getSummary());
+            }
         }
     }
 
     /**
-     * Return a rotor, reading its description from _config.
+     * Write out what has been converted so far.
      */
-    private Rotor readRotor() {
+    private void flushOutput() {
         try {
-            String name = _config.next().toUpperCase();
-            String notches = _config.next();
-            String cycles = _config.nextLine();
+            if (_bulk) {
+                drainBulkOutput();
+                return;
+            }
+            _output.flush();
+        } catch (IOException excp) {
+            throw error("could not write output");
+        }
+    }
+
+    /**
+     * Return an Enigma machine configured from the configuration file
+     * named NAME, with no rotors inserted.
+     */
+    static Machine readMachine(String name) {
+        return new Main(new String[] { name }).readConfig();
+    }
 
-            if (notches.charAt(0) == 'R') {
-                cycles += _config.nextLine();
+    /**
+     * Return the machine configuration in the configuration file named
+     * NAME, which can be shared by threads converting messages with it.
+     */
+    static MachineSpec readSpec(String name) {
+        return new MachineSpec(readMachine(name));
+    }
+
+    /**
+     * Return an Enigma machine configured from the contents of configuration
+     * file _configFile, taken from its compiled form if that is up to date.
+     */
+    private Machine readConfig() {
+        long checksum = CompiledConfig.checksum(_configText);
+        Path compiled = CompiledConfig.compiledFile(_configFile);
+        Machine result = CompiledConfig.read(compiled, checksum);
+        if (result == null) {
+            result = new ConfigParser(new String(_configText,
+                    Charset.defaultCharset())).parse();
+            if (_compile) {
+                CompiledConfig.write(compiled, checksum, result);
             }
+        }
+        _alphabet = result.alphabet();
+        _numRotors = result.numRotors();
+        _numPawls = result.numPawls();
+        return result;
+    }
 
-            Permutation permutation = new Permutation(cycles, _alphabet);
-            if (notches.charAt(0) == 'M') {
-                return new MovingRotor(name, permutation, notches);
-            } else if (notches.charAt(0) == 'N') {
-                return new FixedRotor(name, permutation);
-            } else if (notches.charAt(0) == 'R') {
-                return new Reflector(name, permutation);
-            } else {
-                return null;
+    /**
+     * Return the alphabet described by LINE, the first line of a
+     * configuration file: either a range of letters or digits such as
+     * A-Z, or the symbols of the alphabet in order, with any whitespace
+     * between them ignored.  Since they delimit cycles and settings, '(',
+     * ')' and '*' may not be symbols.
+     */
+    static Alphabet readAlphabet(String line) {
+        String symbols = line.replaceAll("\\s+", "");
+        if (symbols.length() == 3 && symbols.charAt(1) == '-'
+            && isRange(symbols.charAt(0), symbols.charAt(2))) {
+            return new CharacterRange(symbols.charAt(0), symbols.charAt(2));
+        }
+        for (char ch : "()*".toCharArray()) {
+            if (symbols.indexOf(ch) >= 0) {
+                throw error("'%c' may not be in an alphabet", ch);
             }
-        } catch (NoSuchElementException excp) {
-            throw error("bad rotor description");
         }
+        return new SymbolAlphabet(symbols);
     }
+
+    /**
+     * Return true iff FIRST-LAST describes a range of upper-case letters,
+     * of lower-case letters or of digits, in order.
+     */
+    private static boolean isRange(char first, char last) {
+        return first <= last
+            && ('A' <= first && last <= 'Z'
+                || 'a' <= first && last <= 'z'
+                || '0' <= first && last <= '9');
+    }
+
     /** Parses the SETTINGS line from the setUp method and stores in the
      * appropriate instance variables. */
     private void createSettings(String settings) throws EnigmaException {
@@ -217,14 +639,6 @@ public final class Main {
         M.setPlugboard(_plugBoard);
     }
 
-    /**
-     * Print MSG in groups of five (except that the last group may
-     * have fewer letters).
-     */
-    private void printMessageLine(String msg) {
-
-    }
-
     /**
      * Alphabet used in this machine.
      */
@@ -232,24 +646,78 @@ public final class Main {
     /**
      * Source of input messages.
      */
-    private Scanner _input;
+    private Reader _input;
     /**
-     * Source of machine configuration.
+     * Configuration file.
      */
-    private Scanner _config;
+    private Path _configFile;
+    /**
+     * Contents of _configFile.
+     */
+    private byte[] _configText;
+    /** True if the compiled form of _configFile should be saved. */
+    private boolean _compile;
 
     /**
      * File for encoded/decoded messages.
      */
-    private PrintStream _output;
+    private Writer _output;
 
     /** MACHINE instance for MAIN. */
     private Machine _theEnigma;
 
-    /**
-     * Collection of ROTORS for MACHINE.
-     */
-    private ArrayList<Rotor> _allRotors = new ArrayList<Rotor>();
+    /** True once _theEnigma has been set up from a settings line. */
+    private boolean _configured;
+
+    /** Number of threads used to convert messages. */
+    private int _threads = 1;
+
+    /** Converts message text on _threads threads, when _threads > 1. */
+    private ParallelConverter _parallel;
+
+    /** Message text waiting to be converted by _parallel. */
+    private StringBuilder _batch = new StringBuilder();
+
+    /** Characters already written on the output line that _batch
+     *  continues. */
+    private int _batchCount;
+
+    /** True when processing with processBulk. */
+    private boolean _bulk;
+
+    /** True when _input and _output are Pipeline stages. */
+    private boolean _pipeline;
+
+    /** Counts and times of the work done, or null if not kept. */
+    private Stats _stats;
+
+    /** Seconds between reports of _stats. */
+    private int _statsPeriod;
+
+    /** Files and stages to close when processing ends, in the order
+     *  opened. */
+    private final ArrayList<Closeable> _opened = new ArrayList<>();
+
+    /** Input file in bulk mode. */
+    private FileChannel _inChannel;
+
+    /** Output file in bulk mode. */
+    private FileChannel _outChannel;
+
+    /** Output waiting to be written to _outChannel. */
+    private ByteBuffer _bulkOut;
+
+    /** Largest part of the input mapped into memory at once. */
+    private static final int BULK_WINDOW = 1 << 28;
+
+    /** Largest piece of a message converted into _bulkOut at once. */
+    private static final int BULK_SLICE = 1 << 16;
+
+    /** Size of _bulkOut. */
+    private static final int BULK_OUTPUT = 1 << 20;
+
+    /** Amount of message text to gather before converting it. */
+    private static final int BATCH_SIZE = 1 << 22;
 
     /** Stores the PLUGBOARD permutation for a MACHINE instance. */
     private Permutation _plugBoard;
@@ -1,8 +1,17 @@
 package enigma;
 import org.junit.Test;
 import static org.junit.Assert.*;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
 
 /** Some extra tests for Enigma.
  *  @author JosephHayes*/
@@ -56,6 +65,189 @@ public class MoreEnigmaTests {
         assertEquals("ABCD", getSetting(ac, machineRotors));
     }
 
+    @Test
+    public void testConfigParser() {
+        Machine mach = new ConfigParser("ABCDEF\r\n 3 2\n"
+                + "RF R (AB) (CD)\n   (EF)\nR1 MA (ABC)\n"
+                + "R2 MBA (DEF) (AB)\n").parse();
+        assertEquals(3, mach.numRotors());
+        assertEquals(2, mach.numPawls());
+        assertEquals(6, mach.alphabet().size());
+        assertEquals(3, mach.rotors().size());
+        Alphabet af = new CharacterRange('A', 'F');
+        Machine expected = new Machine(af, 3, 2, Arrays.asList(
+                new Reflector("RF", new Permutation("(AB) (CD) (EF)", af)),
+                new MovingRotor("R1", new Permutation("(ABC)", af), "A"),
+                new MovingRotor("R2", new Permutation("(DEF) (AB)", af),
+                                "BA")));
+        for (Machine m : new Machine[] {mach, expected}) {
+            m.insertRotors(new String[] {"RF", "R1", "R2"});
+            m.setRotors("AB");
+        }
+        assertEquals(expected.convert("ABCDEFABCDEF"),
+                     mach.convert("ABCDEFABCDEF"));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testConfigMissingReflectorLine() {
+        new ConfigParser("A-Z\n5 3\nB R (AE) (BN)\n").parse();
+    }
+
+    @Test
+    public void testCompiledConfig() throws IOException {
+        String text = "ABCDEF\n 3 2\nRF R (AB) (CD)\n   (EF)\n"
+            + "R1 MMA (ABC)\nR2 N (DEF) (AB)\nR3 MB (BF)\n";
+        long checksum = CompiledConfig.checksum(text.getBytes());
+        Machine mach = new ConfigParser(text).parse();
+        Path file = Files.createTempFile("enigma", CompiledConfig.SUFFIX);
+        try {
+            CompiledConfig.write(file, checksum, mach);
+            assertNull(CompiledConfig.read(file, checksum + 1));
+            Machine copy = CompiledConfig.read(file, checksum);
+            assertNotNull(copy);
+            assertEquals(4, copy.rotors().size());
+            for (Machine m : new Machine[] {mach, copy}) {
+                m.insertRotors(new String[] {"RF", "R2", "R1"});
+                m.setRotors("CF");
+            }
+            String msg = "ABCDEF FEDCBA AAAAAA BBBBBB";
+            assertEquals(mach.convert(msg), copy.convert(msg));
+            assertEquals(mach.setting(), copy.setting());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testMainRun() throws IOException {
+        Path config = Files.createTempFile("enigma", ".conf");
+        Path input = Files.createTempFile("enigma", ".inp");
+        Path output = Files.createTempFile("enigma", ".out");
+        try {
+            Files.write(config, ("H-Q\n3 2\nRF R (HI) (JK) (LM) (NO) (PQ)\n"
+                    + "\nROT1 MJ (HIJK) (LMNOPQ)\nROT2 MN (IHKJMLONQP)\n")
+                    .getBytes());
+            Files.write(input, "* RF ROT1 ROT2 HQ\nHIJ KLM\n".getBytes());
+            for (int k = 0; k < 2; k += 1) {
+                Main.run(config.toString(), input.toString(),
+                         output.toString());
+                assertEquals(6, new String(Files.readAllBytes(output))
+                             .replaceAll("\\s", "").length());
+            }
+
+            /* Without the blank line, the reflector's cycles swallow the
+             * first rotor, and Main stops quietly. */
+            Files.write(config, ("H-Q\n3 2\nRF R (HI) (JK) (LM) (NO) (PQ)\n"
+                    + "ROT1 MJ (HIJK) (LMNOPQ)\nROT2 MN (IHKJMLONQP)\n")
+                    .getBytes());
+            Main.run(config.toString(), input.toString(), output.toString());
+            assertEquals(0, Files.size(output));
+        } finally {
+            Files.delete(config);
+            Files.delete(input);
+            Files.delete(output);
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testMainRunError() {
+        Main.run("no-such-file.conf");
+    }
+
+    @Test
+    public void testPipeline() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int k = 0; text.length() < 500000; k += 1) {
+            text.append(k % 10 == 0 ? "* B BETA I II III AAAA\n" : "HELLO ")
+                .append(k % 7 == 0 ? "\n" : "");
+        }
+        Reader in = Pipeline.reader(new StringReader(text.toString()));
+        StringWriter sink = new StringWriter();
+        Writer out = Pipeline.writer(sink);
+        char[] buffer = new char[1000];
+        int len;
+        while ((len = in.read(buffer, 0, 1 + text.length() % 999)) != -1) {
+            out.write(buffer, 0, len);
+        }
+        out.flush();
+        assertEquals(text.toString(), sink.toString());
+        out.write("END");
+        out.close();
+        assertEquals(text + "END", sink.toString());
+        assertEquals(-1, in.read(buffer));
+    }
+
+    @Test(expected = IOException.class)
+    public void testPipelineWriteError() throws IOException {
+        Writer out = Pipeline.writer(new Writer() {
+            @Override
+            public void write(char[] buffer, int start, int len)
+                throws IOException {
+                throw new IOException("disk full");
+            }
+            @Override
+            public void flush() {
+            }
+            @Override
+            public void close() {
+            }
+        });
+        out.write(new char[1 << 17]);
+        out.flush();
+    }
+
+    /** Return the live threads named NAME. */
+    private static Set<Thread> threads(String name) {
+        Set<Thread> result = new HashSet<>();
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals(name) && thread.isAlive()) {
+                result.add(thread);
+            }
+        }
+        return result;
+    }
+
+    @Test
+    public void testPipelineCloseAfterError() throws Exception {
+        boolean[] closed = new boolean[1];
+        Set<Thread> before = threads("enigma-writer");
+        Writer out = Pipeline.writer(new Writer() {
+            @Override
+            public void write(char[] buffer, int start, int len)
+                throws IOException {
+                throw new IOException("disk full");
+            }
+            @Override
+            public void flush() {
+            }
+            @Override
+            public void close() {
+                closed[0] = true;
+            }
+        });
+        Set<Thread> writers = threads("enigma-writer");
+        writers.removeAll(before);
+        assertEquals(1, writers.size());
+
+        out.write(new char[1 << 17]);
+        try {
+            out.flush();
+            fail("write error not reported");
+        } catch (IOException excp) {
+            assertEquals("disk full", excp.getMessage());
+        }
+        try {
+            out.close();
+            fail("write error not reported");
+        } catch (IOException excp) {
+            assertEquals("disk full", excp.getMessage());
+        }
+        assertTrue(closed[0]);
+        Thread writer = writers.iterator().next();
+        writer.join(5000);
+        assertFalse(writer.isAlive());
+    }
+
     /** Helper method to get the String representation of the current Rotor
      * settings */
     private String getSetting(Alphabet alph, Rotor[] machineRotors) {
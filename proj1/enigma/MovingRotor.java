@@ -22,26 +22,34 @@ class MovingRotor extends Rotor {
 
     /**
      * Checks that notches is not empty and removes the first letter of the
-     * string for notches if it is 'M' indicating that it is a moving notch.
+     * string for notches if it is 'M' indicating that it is a moving notch,
+     * then records which settings are notches.  Characters that are not in
+     * the alphabet are ignored.
      *
      * @param notches A string containing the notches for this rotor.
      */
     private void setNotches(String notches) {
         if (!notches.isEmpty() && notches.charAt(0) == 'M') {
-            this._notches = notches.substring(1);
-        } else {
-            this._notches = notches;
+            notches = notches.substring(1);
+        }
+        Alphabet alphabet = permutation().alphabet();
+        this._notches = new boolean[size()];
+        for (int i = 0; i < notches.length(); i += 1) {
+            int posn = alphabet.indexOf(notches.charAt(i));
+            if (posn >= 0) {
+                this._notches[posn] = true;
+            }
         }
     }
 
     @Override
     boolean atNotch() {
-        char notch = permutation().alphabet().toChar(this.setting());
+        return atNotch(this.setting());
+    }
 
-        if (_notches.indexOf(notch) != -1) {
-            return true;
-        }
-        return false;
+    @Override
+    boolean atNotch(int posn) {
+        return _notches[posn];
     }
 
     @Override
@@ -54,6 +62,6 @@ class MovingRotor extends Rotor {
         return true;
     }
 
-    /** Stores the NOTCHES for this rotor after removing the style of rotor.*/
-    private String _notches;
+    /** NOTCHES[s] is true iff this rotor has a notch at setting s. */
+    private boolean[] _notches;
 }
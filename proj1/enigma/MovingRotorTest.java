@@ -89,4 +89,17 @@ public class MovingRotorTest {
         assertEquals(1, rotor.setting());
     }
 
+    @Test
+    public void checkNotchTable() {
+        setRotor("I", NAVALA, "MQA?z");
+        for (int s = 0; s < 26; s += 1) {
+            assertEquals("setting " + s, s == 0 || s == 16,
+                    rotor.atNotch(s));
+        }
+        rotor.set(16);
+        assertTrue(rotor.atNotch());
+        rotor.advance();
+        assertFalse(rotor.atNotch());
+    }
+
 }
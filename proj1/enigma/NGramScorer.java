@@ -0,0 +1,205 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import static enigma.EnigmaException.*;
+
+/** A Scorer that rates text by the sum of the log probabilities of its
+ *  n-grams (runs of n consecutive characters), as measured in some body
+ *  of plain text.  Tables are kept in binary files that are memory mapped
+ *  when loaded and scored from in place, so that only the parts of a
+ *  table that are used are ever read: a magic number, the n-gram length
+ *  and the alphabet size, each as an int, followed by size**n floats, the
+ *  log10 probability of each n-gram in the order of its index as a
+ *  base-size numeral.  All are little-endian, the native order of the
+ *  usual machines, so that scoring needs no byte swapping there.
+ *  Usage:
+ *      java enigma.NGramScorer CONFIG N CORPUS TABLE
+ *  writes the table of N-grams of the text in file CORPUS, in the alphabet
+ *  of configuration file CONFIG, to file TABLE.
+ *  @author josephhayes
+ */
+public class NGramScorer implements Scorer {
+
+    /** Write the table described by ARGS (see above). */
+    public static void main(String... args) {
+        try {
+            if (args.length != 4) {
+                throw error("Usage: java enigma.NGramScorer CONFIG N "
+                        + "CORPUS TABLE");
+            }
+            Machine machine = Main.readMachine(args[0]);
+            int[] corpus = machine.indices(KeySearch.readFile(args[2]));
+            train(machine.alphabet().size(), Integer.parseInt(args[1]),
+                  corpus, corpus.length).save(args[3]);
+        } catch (EnigmaException | NumberFormatException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** A scorer for N-grams of an alphabet of SIZE characters, where
+     *  entry K of TABLE is the log probability of the n-gram with index
+     *  K. */
+    NGramScorer(int n, int size, FloatBuffer table) {
+        if (entries(size, n) != table.limit()) {
+            throw error("n-gram table has the wrong size");
+        }
+        _n = n;
+        _size = size;
+        _table = table;
+        _span = table.limit() / size;
+    }
+
+    /** Return the number of N-grams of an alphabet of SIZE characters,
+     *  which must fit in an int. */
+    static int entries(int size, int n) {
+        if (size < 1 || n < 1) {
+            throw error("bad n-gram table dimensions");
+        }
+        long result = 1;
+        for (int i = 0; i < n; i += 1) {
+            result *= size;
+            if (result > Integer.MAX_VALUE) {
+                throw error("too many %d-grams of %d characters", n, size);
+            }
+        }
+        return (int) result;
+    }
+
+    /** Return a scorer for the N-grams of the first LENGTH characters of
+     *  TEXT, which are indices in an alphabet of SIZE characters.  N-grams
+     *  that do not occur are given a probability well below that of those
+     *  that occur once. */
+    static NGramScorer train(int size, int n, int[] text, int length) {
+        int entries = entries(size, n);
+        long[] counts = new long[entries];
+        int span = entries / size;
+        long total = 0;
+        int index = 0;
+        for (int i = 0; i < length; i += 1) {
+            index = (index % span) * size + text[i];
+            if (i >= n - 1) {
+                counts[index] += 1;
+                total += 1;
+            }
+        }
+        float[] table = new float[entries];
+        double floor = Math.log10(FLOOR / Math.max(1, total));
+        for (int k = 0; k < entries; k += 1) {
+            table[k] = (float) (counts[k] == 0 ? floor
+                                : Math.log10((double) counts[k] / total));
+        }
+        return new NGramScorer(n, size, FloatBuffer.wrap(table));
+    }
+
+    /** Return the scorer whose table is in the file named NAME, which
+     *  must be for an alphabet of SIZE characters. */
+    static NGramScorer load(String name, int size) {
+        try (FileChannel channel =
+             FileChannel.open(Paths.get(name), StandardOpenOption.READ)) {
+            MappedByteBuffer data =
+                channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            data.order(ORDER);
+            if (data.remaining() < HEADER || data.getInt() != MAGIC) {
+                throw error("%s is not an n-gram table", name);
+            }
+            int n = data.getInt(), tableSize = data.getInt();
+            if (tableSize != size) {
+                throw error("%s is for an alphabet of %d characters, not %d",
+                            name, tableSize, size);
+            }
+            return new NGramScorer(n, size, data.asFloatBuffer());
+        } catch (IOException excp) {
+            throw error("could not read %s", name);
+        }
+    }
+
+    /** Write my table to the file named NAME. */
+    void save(String name) {
+        try (FileChannel channel =
+             FileChannel.open(Paths.get(name), StandardOpenOption.CREATE,
+                              StandardOpenOption.WRITE,
+                              StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer data = ByteBuffer.allocate(HEADER
+                                                  + _table.limit()
+                                                  * Float.BYTES)
+                .order(ORDER);
+            data.putInt(MAGIC).putInt(_n).putInt(_size);
+            data.asFloatBuffer().put(_table.duplicate());
+            data.rewind();
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+        } catch (IOException excp) {
+            throw error("could not write %s", name);
+        }
+    }
+
+    /** Return the length of my n-grams. */
+    int n() {
+        return _n;
+    }
+
+    @Override
+    public double score(int[] text, int length) {
+        return sum(text, 0, length);
+    }
+
+    @Override
+    public double delta(int[] text, int length, int position, int c) {
+        int from = Math.max(0, position - _n + 1);
+        int to = Math.min(length, position + _n);
+        int old = text[position];
+        double before = sum(text, from, to);
+        text[position] = c;
+        double after = sum(text, from, to);
+        text[position] = old;
+        return after - before;
+    }
+
+    /** Return the sum of the scores of the n-grams lying entirely within
+     *  TEXT[FROM .. TO-1]. */
+    private double sum(int[] text, int from, int to) {
+        FloatBuffer table = _table;
+        int size = _size, span = _span;
+        double result = 0;
+        int index = 0;
+        for (int i = from; i < to; i += 1) {
+            index = (index % span) * size + text[i];
+            if (i - from >= _n - 1) {
+                result += table.get(index);
+            }
+        }
+        return result;
+    }
+
+    /** Identifies n-gram table files ("NGRM"). */
+    private static final int MAGIC = 0x4e47524d;
+
+    /** Byte order of n-gram table files. */
+    private static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    /** Bytes before the table in an n-gram table file. */
+    private static final int HEADER = 3 * Integer.BYTES;
+
+    /** Count given to n-grams that do not occur in training text. */
+    private static final double FLOOR = 0.01;
+
+    /** Length of my n-grams. */
+    private final int _n;
+    /** Size of my alphabet. */
+    private final int _size;
+    /** Log probabilities of the n-grams, by index (read only with
+     *  absolute gets, so that threads may share it). */
+    private final FloatBuffer _table;
+    /** Number of (n-1)-grams. */
+    private final int _span;
+}
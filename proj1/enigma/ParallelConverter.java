@@ -0,0 +1,142 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import static enigma.EnigmaException.*;
+
+/** Converts blocks of message text with a Machine by splitting each block
+ *  into chunks that are converted at the same time on a ForkJoinPool.
+ *  Each chunk starts from a copy of the machine advanced past all the
+ *  characters before it, so the result is exactly what converting the
+ *  block in one piece would give.
+ *  @author josephhayes
+ */
+class ParallelConverter {
+
+    /** A converter that uses THREADS >= 1 threads. */
+    ParallelConverter(int threads) {
+        if (threads < 1) {
+            throw error("need at least one thread");
+        }
+        _threads = threads;
+        _pool = new ForkJoinPool(threads);
+    }
+
+    /** Return the number of threads I use. */
+    int threads() {
+        return _threads;
+    }
+
+    /** Convert TEXT with MACHINE, appending the result to OUT.  Lines in
+     *  TEXT are separated by '\n' and are converted as for
+     *  Machine.convert(String), each followed by a newline in OUT.  COUNT
+     *  is the number of characters already written on the current output
+     *  line (when TEXT continues a line).  Leaves MACHINE advanced past
+     *  all the characters converted and returns the number of characters
+     *  on the last output line. */
+    int convert(Machine machine, CharSequence text, int count,
+                Appendable out) {
+        int len = text.length();
+        int chunks = Math.min(_threads * CHUNKS_PER_THREAD,
+                Math.max(1, len / MIN_CHUNK));
+        ArrayList<ForkJoinTask<StringBuilder>> tasks = new ArrayList<>();
+
+        long before = 0;
+        int start = 0;
+        for (int k = 1; k <= chunks; k += 1) {
+            int end = (int) ((long) len * k / chunks);
+            tasks.add(_pool.submit(
+                    new Chunk(machine, text, start, end, before, count)));
+            for (int i = start; i < end; i += 1) {
+                char ch = text.charAt(i);
+                if (ch == '\n') {
+                    count = 0;
+                } else if (!Character.isWhitespace(ch)) {
+                    before += 1;
+                    count += 1;
+                }
+            }
+            start = end;
+        }
+
+        try {
+            for (ForkJoinTask<StringBuilder> task : tasks) {
+                out.append(task.join());
+            }
+        } catch (java.io.IOException excp) {
+            throw error("could not write message: %s", excp.getMessage());
+        }
+        machine.advance(before);
+        return count;
+    }
+
+    /** Stop my threads once their current work is done. */
+    void shutdown() {
+        _pool.shutdown();
+    }
+
+    /** Conversion of one piece of a block of text. */
+    private static class Chunk implements Callable<StringBuilder> {
+
+        /** Conversion of TEXT[START .. END-1] by a copy of MACHINE that
+         *  has first been advanced by SKIP characters.  COUNT characters
+         *  have already been written on the line containing START. */
+        Chunk(Machine machine, CharSequence text, int start, int end,
+              long skip, int count) {
+            _machine = machine.copy();
+            _text = text;
+            _start = start;
+            _end = end;
+            _skip = skip;
+            _count = count;
+        }
+
+        @Override
+        public StringBuilder call() {
+            StringBuilder result =
+                new StringBuilder((_end - _start) * 6 / 5 + 1);
+            int count = _count;
+            _machine.advance(_skip);
+            for (int i = _start; i < _end; i += 1) {
+                int end = i;
+                while (end < _end && _text.charAt(end) != '\n') {
+                    end += 1;
+                }
+                count = _machine.convert(_text, i, end, count, result);
+                if (end < _end) {
+                    result.append('\n');
+                    count = 0;
+                }
+                i = end;
+            }
+            return result;
+        }
+
+        /** The machine converting my chunk. */
+        private final Machine _machine;
+        /** The text containing my chunk. */
+        private final CharSequence _text;
+        /** The bounds of my chunk in _text. */
+        private final int _start, _end;
+        /** The number of characters converted before my chunk. */
+        private final long _skip;
+        /** Characters already on the output line where my chunk starts. */
+        private final int _count;
+    }
+
+    /** Number of chunks to divide each block into per thread, so that
+     *  threads that finish early can pick up more work. */
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    /** Smallest chunk worth handing to another thread. */
+    private static final int MIN_CHUNK = 1 << 14;
+
+    /** Number of threads in _pool. */
+    private final int _threads;
+
+    /** Pool that converts chunks. */
+    private final ForkJoinPool _pool;
+}
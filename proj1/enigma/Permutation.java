@@ -1,6 +1,7 @@
 package enigma;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import static enigma.EnigmaException.*;
 
@@ -22,20 +23,64 @@ class Permutation {
     Permutation(String cycles, Alphabet alphabet) {
         this._alphabet = alphabet;
         splitCycles(cycles);
+        compileCycles();
+    }
+
+    /**
+     * Set this Permutation to the one taking each index i to FORWARD[i],
+     * where FORWARD holds each index of ALPHABET exactly once.
+     */
+    Permutation(Alphabet alphabet, int[] forward) {
+        this._alphabet = alphabet;
+        int n = size();
+        if (forward.length != n) {
+            throw error("permutation has the wrong size");
+        }
+        _forward = forward.clone();
+        _inverse = new int[n];
+        Arrays.fill(_inverse, -1);
+        for (int i = 0; i < n; i += 1) {
+            int to = _forward[i];
+            if (to < 0 || to >= n || _inverse[to] >= 0) {
+                throw error("not a permutation");
+            }
+            _inverse[to] = i;
+        }
+        boolean[] seen = new boolean[n];
+        StringBuilder cycle = new StringBuilder();
+        for (int start = 0; start < n; start += 1) {
+            if (seen[start] || _forward[start] == start) {
+                continue;
+            }
+            cycle.setLength(0);
+            for (int c = start; !seen[c]; c = _forward[c]) {
+                seen[c] = true;
+                cycle.append(_alphabet.toChar(c));
+            }
+            addCycle(cycle.toString());
+        }
     }
 
     /**
      * Splits the String of CYCLES into an individual CYCLE at ")" character.
-     * Removes whitespace, "(", and ")" characters from the string.
+     * Removes whitespace, "(", and ")" characters from the string.  This
+     * is done in one pass, since rotor catalogs may hold many cycles.
      */
     private void splitCycles(String cycles) {
-        cycles = cycles.replaceAll("\\s", "").replaceAll("\\)", "-");
-
-        String[] splitCycle = cycles.split("\\-");
-
-        for (int i = 0; i < splitCycle.length; i++) {
-            String tempString = splitCycle[i].replaceAll("\\(", "");
-            addCycle(tempString);
+        StringBuilder cycle = new StringBuilder();
+        for (int i = 0; i < cycles.length(); i += 1) {
+            char ch = cycles.charAt(i);
+            if (ch == ')') {
+                if (cycle.length() > 0) {
+                    addCycle(cycle.toString());
+                    cycle.setLength(0);
+                }
+            } else if (ch != '(' && !Character.isWhitespace(ch)) {
+                cycle.append(ch);
+            }
+        }
+        if (cycle.length() > 0) {
+            addCycle(cycle.toString());
         }
     }
 
@@ -47,6 +92,47 @@ class Permutation {
         this._cycles.add(cycle);
     }
 
+    /**
+     * Fills in _forward and _inverse from _cycles, so that permuting in
+     * either direction is a single array access.  Characters that appear
+     * in no cycle map to themselves.  As with a search of the cycles in
+     * order, the first cycle mentioning a character determines where it
+     * goes, and characters outside the alphabet are skipped.
+     */
+    private void compileCycles() {
+        int n = size();
+        _forward = new int[n];
+        _inverse = new int[n];
+        boolean[] mapped = new boolean[n];
+        boolean[] reached = new boolean[n];
+        for (int i = 0; i < n; i += 1) {
+            _forward[i] = _inverse[i] = i;
+        }
+        int[] members = new int[n];
+        for (String cycle : _cycles) {
+            int len = 0;
+            for (int k = 0; k < cycle.length() && len < n; k += 1) {
+                char ch = cycle.charAt(k);
+                int index = _alphabet.indexOf(ch);
+                if (index >= 0) {
+                    members[len] = index;
+                    len += 1;
+                }
+            }
+            for (int k = 0; k < len; k += 1) {
+                int from = members[k], to = members[wrapCycle(k + 1, len)];
+                if (!mapped[from]) {
+                    mapped[from] = true;
+                    _forward[from] = to;
+                }
+                if (!reached[to]) {
+                    reached[to] = true;
+                    _inverse[to] = from;
+                }
+            }
+        }
+    }
+
     /**
      * Return the value of P modulo the size of this permutation.
      */
@@ -80,18 +166,7 @@ class Permutation {
      * alphabet size.
      */
     int permute(int p) {
-
-        char character = _alphabet.toChar(wrap(p));
-
-        for (String cycle : _cycles) {
-            int position = cycle.indexOf(character);
-
-            if (position != -1) {
-                position = wrapCycle(position + 1, cycle.length());
-                return _alphabet.toInt(cycle.charAt(position));
-            }
-        }
-        return p;
+        return _forward[wrap(p)];
     }
 
     /**
@@ -99,17 +174,7 @@ class Permutation {
      * to C modulo the alphabet size.
      */
     int invert(int c) {
-        char character = _alphabet.toChar(wrap(c));
-
-        for (String cycle : _cycles) {
-            int position = cycle.indexOf(character);
-
-            if (position != -1) {
-                position = wrapCycle(position - 1, cycle.length());
-                return _alphabet.toInt(cycle.charAt(position));
-            }
-        }
-        return c;
+        return _inverse[wrap(c)];
     }
 
     /**
@@ -147,6 +212,182 @@ class Permutation {
         return false;
     }
 
+    /**
+     * Return the permutation that applies OTHER and then me.
+     */
+    Permutation compose(Permutation other) {
+        int n = size();
+        int[] result = new int[n];
+        for (int i = 0; i < n; i += 1) {
+            result[i] = _forward[other._forward[i]];
+        }
+        return new Permutation(_alphabet, result);
+    }
+
+    /**
+     * Return my inverse.
+     */
+    Permutation inverse() {
+        return new Permutation(_alphabet, _inverse);
+    }
+
+    /**
+     * Return the permutation that applies me K times (my inverse -K times
+     * if K is negative).  Each cycle is rotated by K at once, so this
+     * takes time proportional to the alphabet size whatever K is.
+     */
+    Permutation power(long k) {
+        int n = size();
+        int[] result = new int[n];
+        int[] cycle = new int[n];
+        boolean[] seen = new boolean[n];
+        for (int start = 0; start < n; start += 1) {
+            if (seen[start]) {
+                continue;
+            }
+            int len = 0;
+            for (int c = start; !seen[c]; c = _forward[c]) {
+                seen[c] = true;
+                cycle[len] = c;
+                len += 1;
+            }
+            int shift = (int) Math.floorMod(k, (long) len);
+            for (int j = 0; j < len; j += 1) {
+                int to = j + shift;
+                result[cycle[j]] = cycle[to >= len ? to - len : to];
+            }
+        }
+        return new Permutation(_alphabet, result);
+    }
+
+    /**
+     * Return my conjugate by a shift of K: the permutation taking C to
+     * permute(C + K) - K (modulo the alphabet size).  This is the
+     * conversion made by a rotor with my wiring at setting K.
+     */
+    Permutation shifted(int k) {
+        int[] result = new int[size()];
+        shift(_forward, wrap(k), result, 0);
+        return new Permutation(_alphabet, result);
+    }
+
+    /**
+     * Put the conversions made in each direction by a rotor with my
+     * wiring at setting K into FORWARD and BACKWARD, starting at index
+     * OFFSET of each.
+     */
+    void shiftedTables(int k, int[] forward, int[] backward, int offset) {
+        shift(_forward, wrap(k), forward, offset);
+        shift(_inverse, wrap(k), backward, offset);
+    }
+
+    /**
+     * Put the conjugate by a shift of 0 <= K < TABLE.length of the
+     * mapping TABLE into RESULT, starting at index OFFSET.
+     */
+    private static void shift(int[] table, int k, int[] result, int offset) {
+        int n = table.length;
+        for (int i = 0, j = k; i < n; i += 1, j += 1) {
+            if (j == n) {
+                j = 0;
+            }
+            int to = table[j] - k;
+            result[offset + i] = to < 0 ? to + n : to;
+        }
+    }
+
+    /**
+     * Returns a new array holding the result of permuting each index.
+     */
+    int[] toArray() {
+        return _forward.clone();
+    }
+
+    /**
+     * Return the lengths of my cycles, counting each character that maps
+     * to itself as a cycle of length 1, longest first.  Two permutations
+     * are conjugate exactly when their cycle types are equal.
+     */
+    int[] cycleType() {
+        return cycleType(_forward);
+    }
+
+    /**
+     * Return the lengths of the cycles of the permutation taking each
+     * index i to TABLE[i], longest first, as for cycleType().
+     */
+    static int[] cycleType(int[] table) {
+        int n = table.length;
+        int[] lengths = new int[n];
+        int count = 0;
+        boolean[] seen = new boolean[n];
+        for (int start = 0; start < n; start += 1) {
+            int len = 0;
+            for (int c = start; !seen[c]; c = table[c]) {
+                seen[c] = true;
+                len += 1;
+            }
+            if (len > 0) {
+                lengths[count] = len;
+                count += 1;
+            }
+        }
+        int[] result = Arrays.copyOf(lengths, count);
+        Arrays.sort(result);
+        for (int i = 0, j = count - 1; i < j; i += 1, j -= 1) {
+            int tmp = result[i];
+            result[i] = result[j];
+            result[j] = tmp;
+        }
+        return result;
+    }
+
+    /**
+     * Return my cycle notation in a standard form: each cycle starts with
+     * its first character in the alphabet, cycles are in order of their
+     * first characters, and characters that map to themselves are left
+     * out.  Equal permutations of the same alphabet have the same
+     * canonical form, which is computed only once.
+     */
+    String canonical() {
+        if (_canonical == null) {
+            int n = size();
+            StringBuilder result = new StringBuilder();
+            boolean[] seen = new boolean[n];
+            for (int start = 0; start < n; start += 1) {
+                if (seen[start] || _forward[start] == start) {
+                    continue;
+                }
+                if (result.length() > 0) {
+                    result.append(' ');
+                }
+                result.append('(');
+                for (int c = start; !seen[c]; c = _forward[c]) {
+                    seen[c] = true;
+                    result.append(_alphabet.toChar(c));
+                }
+                result.append(')');
+            }
+            _canonical = result.toString();
+        }
+        return _canonical;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof Permutation)) {
+            return false;
+        }
+        Permutation other = (Permutation) obj;
+        return Arrays.equals(_forward, other._forward)
+            && canonical().equals(other.canonical());
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(_forward);
+    }
+
     /**
      * Alphabet of this permutation.
      */
@@ -155,4 +396,16 @@ class Permutation {
      * a list containing individual CYCLE linked lists.
      */
     private ArrayList<String> _cycles = new ArrayList<>();
+    /**
+     * FORWARD[i] is the result of permuting index i.
+     */
+    private int[] _forward;
+    /**
+     * INVERSE[i] is the result of inverting index i.
+     */
+    private int[] _inverse;
+    /**
+     * My canonical cycle notation, once computed.
+     */
+    private String _canonical;
 }
@@ -99,4 +99,109 @@ public class PermutationTest {
         assertFalse(permReflectB.permute('A') == 'V');
     }
 
+    @Test
+    public void checkWrappedIndices() {
+        perm = new Permutation(NAVALA.get("I"), UPPER);
+        for (int i = 0; i < 26; i += 1) {
+            assertEquals(perm.permute(i), perm.permute(i + 26));
+            assertEquals(perm.permute(i), perm.permute(i - 26));
+            assertEquals(i, perm.invert(perm.permute(i + 52)));
+        }
+    }
+
+    @Test
+    public void checkAlgebra() {
+        Permutation rotorI = new Permutation(NAVALA.get("I"), UPPER);
+        Permutation rotorII = new Permutation(NAVALA.get("II"), UPPER);
+        Permutation id = new Permutation("", UPPER);
+
+        Permutation both = rotorI.compose(rotorII);
+        for (int c = 0; c < 26; c += 1) {
+            assertEquals(rotorI.permute(rotorII.permute(c)), both.permute(c));
+        }
+        assertEquals(id, rotorI.compose(rotorI.inverse()));
+        assertEquals(rotorI, rotorI.inverse().inverse());
+        assertEquals(rotorI.compose(rotorI).compose(rotorI),
+                     rotorI.power(3));
+        assertEquals(rotorI.inverse().power(2), rotorI.power(-2));
+        assertEquals(id, rotorI.power(0));
+        assertEquals(id, rotorI.power(10 * 4 * 3 * 2 * 7));
+        assertEquals(rotorI.power(5), rotorI.power(5 + 1680L * 1000000));
+
+        for (int k = -30; k < 30; k += 1) {
+            Permutation shifted = rotorI.shifted(k);
+            for (int c = 0; c < 26; c += 1) {
+                assertEquals(rotorI.wrap(rotorI.permute(c + k) - k),
+                             shifted.permute(c));
+            }
+            assertArrayEquals(rotorI.cycleType(), shifted.cycleType());
+        }
+    }
+
+    @Test
+    public void checkCanonicalForm() {
+        perm = new Permutation("(BKNW) (S) (ELTPHQXRUA) (CMOY) (FGD) (VI) "
+                + "(JZ)", UPPER);
+        Permutation rotorI = new Permutation(NAVALA.get("I"), UPPER);
+        assertEquals("(AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ)",
+                     perm.canonical());
+        assertEquals(rotorI, perm);
+        assertEquals(rotorI.hashCode(), perm.hashCode());
+        assertArrayEquals(new int[] {10, 4, 4, 3, 2, 2, 1}, perm.cycleType());
+        assertEquals("", new Permutation("", UPPER).canonical());
+
+        Permutation copy = new Permutation(UPPER, rotorI.toArray());
+        assertEquals(rotorI, copy);
+        perm = copy;
+        checkPerm("from array", UPPER_STRING, "EKMFLGDQVZNTOWYHXUSPAIBRCJ");
+    }
+
+    @Test
+    public void checkSymbolAlphabet() {
+        Alphabet symbols = new SymbolAlphabet("0123456789.,?!ab");
+        assertEquals(16, symbols.size());
+        assertEquals('?', symbols.toChar(12));
+        assertEquals(12, symbols.toInt('?'));
+        assertEquals(15, symbols.toInt('b'));
+        assertEquals('a', symbols.toChar(14));
+        assertTrue(symbols.contains('7'));
+        assertFalse(symbols.contains('A'));
+        assertEquals(-1, symbols.indexOf('c'));
+        assertEquals(-1, symbols.indexOf('/'));
+
+        perm = new Permutation("(09?) (a!) (.)", symbols);
+        alpha = "0123456789.,?!ab";
+        checkPerm("symbols", alpha, "912345678?.,0a!b");
+        assertEquals('?', perm.permute('9'));
+        assertEquals("(09?) (!a)", perm.canonical());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkRepeatedSymbol() {
+        new SymbolAlphabet("ABCA");
+    }
+
+    @Test
+    public void checkReadAlphabet() {
+        Alphabet range = Main.readAlphabet(" A-Z ");
+        assertEquals(26, range.size());
+        assertEquals(25, range.toInt('Z'));
+        Alphabet symbols = Main.readAlphabet("A B C 1 2 3 . ,");
+        assertEquals(8, symbols.size());
+        assertEquals(6, symbols.toInt('.'));
+        assertEquals(10, Main.readAlphabet("0-9").size());
+        assertEquals(3, Main.readAlphabet("a-c").size());
+    }
+
+    @Test
+    public void checkReadDashAlphabet() {
+        Alphabet symbols = Main.readAlphabet("+-/");
+        assertEquals(3, symbols.size());
+        assertEquals(1, symbols.toInt('-'));
+        assertEquals('/', symbols.toChar(2));
+        assertFalse(symbols.contains('.'));
+        assertEquals(3, Main.readAlphabet("A-z").size());
+        assertEquals(3, Main.readAlphabet("Z-A").size());
+    }
+
 }
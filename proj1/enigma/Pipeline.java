@@ -0,0 +1,297 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+
+/** Stages that let reading input and writing output overlap with
+ *  converting messages.  reader() wraps a Reader so that a thread of its
+ *  own reads ahead from it, and writer() wraps a Writer so that a thread
+ *  of its own writes behind.  Text passes between the stages in chunks
+ *  through bounded queues, so a slow stage holds up the others instead
+ *  of letting text pile up in memory.  Main's conversion stage between
+ *  them stays sequential, so settings lines still take effect exactly
+ *  between the messages before and after them.
+ *  @author josephhayes
+ */
+class Pipeline {
+
+    /** Return a Reader that delivers the text of SOURCE, read ahead by a
+     *  separate thread. */
+    static Reader reader(Reader source) {
+        return new StageReader(source);
+    }
+
+    /** Return a Writer that sends what is written to it to SINK, written
+     *  by a separate thread.  Flushing or closing it waits until all
+     *  text written before has reached SINK. */
+    static Writer writer(Writer sink) {
+        return new StageWriter(sink);
+    }
+
+    /** A piece of text passing between stages. */
+    private static class Chunk {
+        /** A chunk holding up to CHUNK characters. */
+        Chunk() {
+            this(new char[CHUNK]);
+        }
+
+        /** A chunk holding the characters DATA. */
+        Chunk(char[] data) {
+            _data = data;
+        }
+
+        /** The text, in _data[0 .. _length-1]. */
+        private final char[] _data;
+        /** Number of characters in _data. */
+        private int _length;
+        /** For the last chunk from a reader, the error that ended it, if
+         *  any. */
+        private IOException _error;
+        /** For a marker sent to a writer, counted down once everything
+         *  before it has been written and flushed. */
+        private CountDownLatch _done;
+    }
+
+    /** The data of a chunk that marks the end of a stream: the end of
+     *  input from a StageReader's thread, or the closing of a
+     *  StageWriter. */
+    private static final char[] NONE = new char[0];
+
+    /** A Reader whose text is read from another by a separate thread. */
+    private static class StageReader extends Reader {
+
+        /** A reader of the text of SOURCE. */
+        StageReader(Reader source) {
+            for (int k = 0; k < DEPTH + 1; k += 1) {
+                _free.add(new Chunk());
+            }
+            _thread = new Thread(() -> fill(source), "enigma-reader");
+            _thread.setDaemon(true);
+            _thread.start();
+        }
+
+        /** Read SOURCE into chunks until it ends, passing them to
+         *  _full.  Runs on _thread. */
+        private void fill(Reader source) {
+            try {
+                while (true) {
+                    Chunk chunk = _free.take();
+                    Chunk last = null;
+                    try {
+                        chunk._length = source.read(chunk._data);
+                        if (chunk._length == -1) {
+                            last = chunk;
+                        }
+                    } catch (IOException excp) {
+                        last = new Chunk(NONE);
+                        last._length = -1;
+                        last._error = excp;
+                    }
+                    _full.put(last == null ? chunk : last);
+                    if (last != null) {
+                        return;
+                    }
+                }
+            } catch (InterruptedException excp) {
+                /* Closed. */
+            }
+        }
+
+        @Override
+        public int read(char[] buffer, int start, int len)
+            throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (_current == null || _position >= _current._length) {
+                if (_current != null && _current._length == -1) {
+                    if (_current._error != null) {
+                        throw _current._error;
+                    }
+                    return -1;
+                }
+                if (_current != null) {
+                    _free.add(_current);
+                }
+                try {
+                    _current = _full.take();
+                } catch (InterruptedException excp) {
+                    throw new InterruptedIOException();
+                }
+                _position = 0;
+            }
+            int count = Math.min(len, _current._length - _position);
+            System.arraycopy(_current._data, _position, buffer, start,
+                             count);
+            _position += count;
+            return count;
+        }
+
+        @Override
+        public void close() {
+            _thread.interrupt();
+        }
+
+        /** Chunks read and not yet delivered, in order. */
+        private final BlockingQueue<Chunk> _full =
+            new ArrayBlockingQueue<>(DEPTH + 1);
+        /** Chunks available to be filled. */
+        private final BlockingQueue<Chunk> _free =
+            new ArrayBlockingQueue<>(DEPTH + 1);
+        /** The chunk being delivered, if any. */
+        private Chunk _current;
+        /** Index in _current of the next character to deliver. */
+        private int _position;
+        /** The thread reading ahead. */
+        private final Thread _thread;
+    }
+
+    /** A Writer whose text is written to another by a separate thread. */
+    private static class StageWriter extends Writer {
+
+        /** A writer sending its text to SINK. */
+        StageWriter(Writer sink) {
+            for (int k = 0; k < DEPTH; k += 1) {
+                _free.add(new Chunk());
+            }
+            _current = new Chunk();
+            _thread = new Thread(() -> drain(sink), "enigma-writer");
+            _thread.setDaemon(true);
+            _thread.start();
+        }
+
+        /** Write the chunks passed to _full to SINK, flushing it at each
+         *  marker, until closed.  Runs on _thread. */
+        private void drain(Writer sink) {
+            try {
+                while (true) {
+                    Chunk chunk = _full.take();
+                    if (chunk._done != null) {
+                        try {
+                            if (_error == null) {
+                                sink.flush();
+                            }
+                            if (chunk._data == NONE) {
+                                sink.close();
+                            }
+                        } catch (IOException excp) {
+                            _error = excp;
+                        }
+                        chunk._done.countDown();
+                        if (chunk._data == NONE) {
+                            return;
+                        }
+                        continue;
+                    }
+                    try {
+                        if (_error == null) {
+                            sink.write(chunk._data, 0, chunk._length);
+                        }
+                    } catch (IOException excp) {
+                        _error = excp;
+                    }
+                    _free.put(chunk);
+                }
+            } catch (InterruptedException excp) {
+                /* Abandoned. */
+            }
+        }
+
+        @Override
+        public void write(char[] buffer, int start, int len)
+            throws IOException {
+            if (_closed) {
+                throw new IOException("stream closed");
+            }
+            check();
+            while (len > 0) {
+                int count = Math.min(len, CHUNK - _current._length);
+                System.arraycopy(buffer, start, _current._data,
+                                 _current._length, count);
+                _current._length += count;
+                start += count;
+                len -= count;
+                if (_current._length == CHUNK) {
+                    pass();
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (!_closed) {
+                await(new Chunk());
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!_closed) {
+                _closed = true;
+                await(new Chunk(NONE));
+            }
+        }
+
+        /** Send MARKER after any text written so far, wait until _thread
+         *  reaches it, and report any error in writing.  MARKER is sent
+         *  even after an error, so that closing always closes the sink
+         *  and ends _thread. */
+        private void await(Chunk marker) throws IOException {
+            if (_current._length > 0) {
+                pass();
+            }
+            marker._done = new CountDownLatch(1);
+            try {
+                _full.put(marker);
+                marker._done.await();
+            } catch (InterruptedException excp) {
+                throw new InterruptedIOException();
+            }
+            check();
+        }
+
+        /** Pass _current to _thread and start another. */
+        private void pass() throws IOException {
+            try {
+                _full.put(_current);
+                _current = _free.take();
+            } catch (InterruptedException excp) {
+                throw new InterruptedIOException();
+            }
+            _current._length = 0;
+        }
+
+        /** Throw the error that _thread met in writing, if any. */
+        private void check() throws IOException {
+            if (_error != null) {
+                throw _error;
+            }
+        }
+
+        /** Chunks to write, in order, and markers. */
+        private final BlockingQueue<Chunk> _full =
+            new ArrayBlockingQueue<>(DEPTH + 1);
+        /** Chunks available to be filled. */
+        private final BlockingQueue<Chunk> _free =
+            new ArrayBlockingQueue<>(DEPTH + 1);
+        /** The chunk being filled. */
+        private Chunk _current;
+        /** The first error met by _thread. */
+        private volatile IOException _error;
+        /** True once closed. */
+        private boolean _closed;
+        /** The thread writing behind. */
+        private final Thread _thread;
+    }
+
+    /** Characters in each chunk. */
+    private static final int CHUNK = 1 << 16;
+
+    /** Number of chunks that may be waiting between two stages. */
+    private static final int DEPTH = 4;
+}
@@ -0,0 +1,400 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import static enigma.EnigmaException.*;
+
+/** Recovers the plugboard of a message whose rotors and settings are
+ *  known, by hill climbing from many random plugboards at once and
+ *  keeping the plugboard whose decryption has the highest index of
+ *  coincidence.
+ *
+ *  The rotors' permutation at every step of the message is computed
+ *  once.  A plugboard change only alters the decryption at the steps
+ *  where the ciphertext character, or the character coming out of the
+ *  rotors, is one of the (at most four) letters whose plugs changed.
+ *  Those steps are found through precomputed indexes, so each candidate
+ *  change costs time proportional to the number of steps it affects
+ *  rather than to the length of the message.
+ *  @author josephhayes
+ */
+class PlugboardSolver {
+
+    /** A solver for CIPHER (as alphabet indices), which was encrypted
+     *  with MACHINE's configuration using the rotors and settings of KEY
+     *  and some unknown plugboard. */
+    PlugboardSolver(Machine machine, Candidate key, int[] cipher) {
+        Machine scrambler = machine.copy();
+        scrambler.insertRotors(key.rotors());
+        scrambler.setRotors(key.setting());
+        scrambler.setPlugboard(new Permutation("", machine.alphabet()));
+        _key = key;
+        _alphabet = machine.alphabet();
+        _n = _alphabet.size();
+        _cipher = cipher;
+        _length = cipher.length;
+        _core = scrambler.scramblers(_length);
+        indexSteps();
+    }
+
+    /** Fill in _byCipher and _byOutput, the indexes of the steps of the
+     *  message by ciphertext character and by (ciphertext character,
+     *  rotor input), ordered by rotor output within each group. */
+    private void indexSteps() {
+        int n = _n;
+        _byCipherStart = new int[n + 1];
+        for (int c : _cipher) {
+            _byCipherStart[c + 1] += 1;
+        }
+        for (int c = 0; c < n; c += 1) {
+            _byCipherStart[c + 1] += _byCipherStart[c];
+        }
+        _byCipher = new int[_length];
+        int[] fill = _byCipherStart.clone();
+        for (int t = 0; t < _length; t += 1) {
+            _byCipher[fill[_cipher[t]]++] = t;
+        }
+
+        /* Entry T * n + Y of _core, sorted by rotor output, then spread
+         * stably over the groups, which leaves each group sorted. */
+        int cells = _length * n;
+        int[] byZ = new int[cells];
+        int[] zStart = new int[n + 1];
+        for (int cell = 0; cell < cells; cell += 1) {
+            zStart[_core[cell] + 1] += 1;
+        }
+        for (int z = 0; z < n; z += 1) {
+            zStart[z + 1] += zStart[z];
+        }
+        for (int cell = 0; cell < cells; cell += 1) {
+            byZ[zStart[_core[cell]]++] = cell;
+        }
+
+        _byOutputStart = new int[n * n + 1];
+        for (int cell = 0; cell < cells; cell += 1) {
+            _byOutputStart[bucket(_cipher[cell / n], cell % n) + 1] += 1;
+        }
+        for (int b = 0; b < n * n; b += 1) {
+            _byOutputStart[b + 1] += _byOutputStart[b];
+        }
+        _byOutput = new int[cells];
+        fill = _byOutputStart.clone();
+        for (int cell : byZ) {
+            _byOutput[fill[bucket(_cipher[cell / n], cell % n)]++] = cell / n;
+        }
+    }
+
+    /** Return the index in _byOutputStart of the steps whose ciphertext
+     *  character is C and whose rotors are given Y. */
+    private int bucket(int c, int y) {
+        return c * _n + y;
+    }
+
+    /** Return the index in _byOutput of the first step whose ciphertext
+     *  character is C, whose rotors take Y to Z or beyond, or the end of
+     *  those whose character is C and rotor input Y if there is none. */
+    private int firstOutput(int c, int y, int z) {
+        int b = bucket(c, y);
+        int lo = _byOutputStart[b], hi = _byOutputStart[b + 1];
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (_core[_byOutput[mid] * _n + y] < z) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Return the best plugboard found by RESTARTS hill climbs from random
+     *  plugboards of at most MAXPAIRS pairs, run on THREADS threads, with
+     *  random choices seeded from SEED.  The result is my key with that
+     *  plugboard and the index of coincidence of its decryption. */
+    Candidate solve(int restarts, int maxPairs, int threads, long seed) {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            ArrayList<Future<Climb>> climbs = new ArrayList<>();
+            for (int r = 0; r < restarts; r += 1) {
+                final long climbSeed = seed + r;
+                Callable<Climb> task = () -> {
+                    Climb climb = new Climb(maxPairs);
+                    climb.randomize(new Random(climbSeed));
+                    climb.run();
+                    return climb;
+                };
+                climbs.add(pool.submit(task));
+            }
+            Climb best = null;
+            for (Future<Climb> future : climbs) {
+                Climb climb = future.get();
+                if (best == null || climb.score() > best.score()) {
+                    best = climb;
+                }
+            }
+            return _key.withPlugboard(best.cycles(), best.score());
+        } catch (InterruptedException | ExecutionException excp) {
+            throw error("plugboard search failed: %s", excp.getMessage());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** Return the index of coincidence of the decryption of the message
+     *  with plugboard CYCLES. */
+    double score(String cycles) {
+        Climb climb = new Climb(_n / 2);
+        Permutation perm = new Permutation(cycles, _alphabet);
+        for (int c = 0; c < _n; c += 1) {
+            climb._plug[c] = perm.permute(c);
+        }
+        climb.decrypt();
+        return climb.score();
+    }
+
+    /** The state of one hill climb: a plugboard and the decryption it
+     *  gives. */
+    private class Climb {
+
+        /** A climb, starting with no plugs, that uses at most MAXPAIRS
+         *  pairs. */
+        Climb(int maxPairs) {
+            _maxPairs = maxPairs;
+            _plug = new int[_n];
+            _plain = new int[_length];
+            _counts = new int[_n];
+            _delta = new int[_n];
+            _mark = new int[_length];
+            _pending = new int[_length];
+            for (int c = 0; c < _n; c += 1) {
+                _plug[c] = c;
+            }
+        }
+
+        /** Plug up to _maxPairs random pairs, using RANDOM. */
+        void randomize(Random random) {
+            int pairs = random.nextInt(_maxPairs + 1);
+            for (int k = 0; k < pairs; k += 1) {
+                int a = random.nextInt(_n), b = random.nextInt(_n);
+                if (a != b && _plug[a] == a && _plug[b] == b) {
+                    _plug[a] = b;
+                    _plug[b] = a;
+                    _pairs += 1;
+                }
+            }
+            decrypt();
+        }
+
+        /** Decrypt the whole message with _plug. */
+        void decrypt() {
+            Arrays.fill(_counts, 0);
+            _sum = 0;
+            for (int t = 0; t < _length; t += 1) {
+                int plain = _plug[_core[t * _n + _plug[_cipher[t]]]];
+                _plain[t] = plain;
+                _sum += 2L * _counts[plain];
+                _counts[plain] += 1;
+            }
+        }
+
+        /** Return the index of coincidence of the current decryption. */
+        double score() {
+            if (_length < 2) {
+                return 0.0;
+            }
+            return (double) _sum / ((long) _length * (_length - 1));
+        }
+
+        /** Return my plugboard in cycle notation. */
+        String cycles() {
+            StringBuilder result = new StringBuilder();
+            for (int c = 0; c < _n; c += 1) {
+                if (_plug[c] > c) {
+                    if (result.length() > 0) {
+                        result.append(' ');
+                    }
+                    result.append('(').append(_alphabet.toChar(c))
+                        .append(_alphabet.toChar(_plug[c])).append(')');
+                }
+            }
+            return result.toString();
+        }
+
+        /** Make improving plugboard changes until none is left. */
+        void run() {
+            boolean improved = true;
+            while (improved) {
+                improved = false;
+                for (int a = 0; a < _n; a += 1) {
+                    for (int b = a + 1; b < _n; b += 1) {
+                        improved |= tryChange(a, b);
+                    }
+                }
+            }
+        }
+
+        /** Consider connecting A and B to each other (first unplugging
+         *  both), or disconnecting them if they are connected.  Make the
+         *  change and return true iff it improves the score. */
+        boolean tryChange(int a, int b) {
+            int[] plug = _plug;
+            int[] changed = { a, b, plug[a], plug[b] };
+            int[] saved = { plug[a], plug[b], plug[plug[a]], plug[plug[b]] };
+            int pairs = _pairs;
+            if (plug[a] == b) {
+                plug[a] = a;
+                plug[b] = b;
+                pairs -= 1;
+            } else {
+                pairs += 1 - (plug[a] != a ? 1 : 0) - (plug[b] != b ? 1 : 0);
+                if (pairs > _maxPairs) {
+                    return false;
+                }
+                plug[plug[a]] = plug[a];
+                plug[plug[b]] = plug[b];
+                plug[a] = b;
+                plug[b] = a;
+            }
+
+            long sum = rescore(changed);
+            if (sum > _sum) {
+                commit(sum);
+                _pairs = pairs;
+                return true;
+            }
+            for (int k = 3; k >= 0; k -= 1) {
+                plug[changed[k]] = saved[k];
+            }
+            return false;
+        }
+
+        /** Decrypt the steps affected by a change to the plugs of the
+         *  letters in CHANGED, now made in _plug, recording the steps
+         *  whose decryption changes in _pending without updating _plain,
+         *  and return the resulting value of _sum. */
+        private long rescore(int[] changed) {
+            _stamp += 1;
+            _pendingCount = 0;
+            Arrays.fill(_delta, 0);
+            for (int k = 0; k < changed.length; k += 1) {
+                int letter = changed[k];
+                if (listed(changed, k, letter)) {
+                    continue;
+                }
+                for (int i = _byCipherStart[letter];
+                     i < _byCipherStart[letter + 1]; i += 1) {
+                    visit(_byCipher[i]);
+                }
+                for (int c = 0; c < _n; c += 1) {
+                    if (!listed(changed, changed.length, c)) {
+                        int y = _plug[c],
+                            end = _byOutputStart[bucket(c, y) + 1];
+                        for (int i = firstOutput(c, y, letter);
+                             i < end && _core[_byOutput[i] * _n + y]
+                                 == letter;
+                             i += 1) {
+                            visit(_byOutput[i]);
+                        }
+                    }
+                }
+            }
+            long sum = _sum;
+            for (int c = 0; c < _n; c += 1) {
+                if (_delta[c] != 0) {
+                    long count = _counts[c], next = count + _delta[c];
+                    sum += next * (next - 1) - count * (count - 1);
+                }
+            }
+            return sum;
+        }
+
+        /** Return true iff C is one of LETTERS[0 .. K-1]. */
+        private boolean listed(int[] letters, int k, int c) {
+            for (int j = 0; j < k; j += 1) {
+                if (letters[j] == c) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /** Decrypt step T with the changed plugboard, unless already done
+         *  in this rescore, adding any change in character counts to
+         *  _delta. */
+        private void visit(int t) {
+            if (_mark[t] == _stamp) {
+                return;
+            }
+            _mark[t] = _stamp;
+            int plain = _plug[_core[t * _n + _plug[_cipher[t]]]];
+            if (plain != _plain[t]) {
+                _delta[_plain[t]] -= 1;
+                _delta[plain] += 1;
+                _pending[_pendingCount++] = t;
+            }
+        }
+
+        /** Apply the changes found by the last rescore, which gave SUM. */
+        private void commit(long sum) {
+            for (int k = 0; k < _pendingCount; k += 1) {
+                int t = _pending[k];
+                int plain = _plug[_core[t * _n + _plug[_cipher[t]]]];
+                _counts[_plain[t]] -= 1;
+                _counts[plain] += 1;
+                _plain[t] = plain;
+            }
+            _sum = sum;
+        }
+
+        /** Most pairs allowed. */
+        private final int _maxPairs;
+        /** Number of pairs in _plug. */
+        private int _pairs;
+        /** My plugboard, as an involution. */
+        private final int[] _plug;
+        /** The decryption. */
+        private final int[] _plain;
+        /** Number of times each character occurs in _plain. */
+        private final int[] _counts;
+        /** Sum of count * (count - 1) over all characters of _plain. */
+        private long _sum;
+        /** Change in _counts from the change being considered. */
+        private final int[] _delta;
+        /** Steps visited by the current rescore have _mark == _stamp. */
+        private final int[] _mark;
+        /** Identifies the current rescore. */
+        private int _stamp;
+        /** Steps whose decryption changes with the change considered. */
+        private final int[] _pending;
+        /** Number of entries in _pending. */
+        private int _pendingCount;
+    }
+
+    /** The rotors and settings of the message. */
+    private final Candidate _key;
+    /** The alphabet of the message. */
+    private final Alphabet _alphabet;
+    /** Size of _alphabet. */
+    private final int _n;
+    /** The message, as alphabet indices. */
+    private final int[] _cipher;
+    /** Length of _cipher. */
+    private final int _length;
+    /** Entry T * _n + C is the rotors' conversion of C at step T. */
+    private final int[] _core;
+    /** Steps of the message grouped by ciphertext character.  Those for
+     *  character C are _byCipher[_byCipherStart[C]] through
+     *  _byCipher[_byCipherStart[C + 1] - 1]. */
+    private int[] _byCipher, _byCipherStart;
+    /** Steps grouped by ciphertext character and rotor input, indexed
+     *  through _byOutputStart (see bucket) as for _byCipher, and ordered
+     *  by rotor output within each group, so that the steps with a given
+     *  output are found by binary search (see firstOutput). */
+    private int[] _byOutput, _byOutputStart;
+}
@@ -60,6 +60,13 @@ class Rotor {
         this._setting = _permutation.alphabet().toInt(cposn);
     }
 
+    /** Record POSN, which must be in the range 0..size()-1, as my
+     *  setting, bypassing any checks made by set.  Used by Machine to
+     *  mirror the positions it tracks itself. */
+    final void mirror(int posn) {
+        this._setting = posn;
+    }
+
     /** Return the conversion of P (an integer in the range 0..size()-1)
      *  according to my permutation. */
     int convertForward(int p) {
@@ -81,6 +88,12 @@ class Rotor {
         return false;
     }
 
+    /** Returns true iff I would allow the rotor to my left to advance
+     *  were I at setting POSN. */
+    boolean atNotch(int posn) {
+        return false;
+    }
+
     /** Advance me one position, if possible. By default, does nothing. */
     void advance() {
     }
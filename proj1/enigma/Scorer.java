@@ -0,0 +1,27 @@
+package enigma;
+
+/** A measure of how much a candidate decryption looks like plain text,
+ *  used to rank keys in searches.  Scorers may be used by several
+ *  threads at once.
+ *  @author josephhayes
+ */
+interface Scorer {
+
+    /** Return the score of the first LENGTH characters of TEXT, which are
+     *  given as alphabet indices.  Higher scores are more plausible. */
+    double score(int[] text, int length);
+
+    /** Return the change in the score of the first LENGTH characters of
+     *  TEXT that would result from changing the character at POSITION to
+     *  C.  TEXT is left as it was.  Scorers that can should override this
+     *  to look only at the text near POSITION. */
+    default double delta(int[] text, int length, int position, int c) {
+        int old = text[position];
+        double before = score(text, length);
+        text[position] = c;
+        double after = score(text, length);
+        text[position] = old;
+        return after - before;
+    }
+
+}
@@ -0,0 +1,284 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static enigma.EnigmaException.*;
+
+/** A long-lived process that reads a configuration once and then
+ *  converts messages sent to it over a socket.  Usage:
+ *      java enigma.Server [--port N | --unix PATH] [--report SECONDS]
+ *          CONFIG
+ *  listens on local TCP port N (default 6161) or on the Unix-domain
+ *  socket PATH.  Each connection is served by its own thread, with its
+ *  own Machine session, and is a series of lines in the format of an
+ *  input file: a settings line sets up the session's machine and message
+ *  lines are converted with it.  Every line gets one line in reply: empty
+ *  for a settings line, the converted message (grouped in fives, as by
+ *  Main) for a message line, or a line starting "Error:" if the line
+ *  could not be handled.  Percentiles of the time taken to handle lines
+ *  are printed to the standard error every SECONDS seconds (default 10)
+ *  while lines are arriving, and when the server stops.
+ *  @author josephhayes
+ */
+public class Server {
+
+    /** Run a server as described by ARGS (see above). */
+    public static void main(String... args) {
+        try {
+            SocketAddress address = new InetSocketAddress(
+                    InetAddress.getLoopbackAddress(), DEFAULT_PORT);
+            long report = DEFAULT_REPORT;
+            int k;
+            for (k = 0; k + 1 < args.length && args[k].startsWith("--");
+                 k += 2) {
+                switch (args[k]) {
+                case "--port":
+                    address = new InetSocketAddress(
+                            InetAddress.getLoopbackAddress(),
+                            Integer.parseInt(args[k + 1]));
+                    break;
+                case "--unix":
+                    address = UnixDomainSocketAddress.of(args[k + 1]);
+                    break;
+                case "--report":
+                    report = Long.parseLong(args[k + 1]);
+                    break;
+                default:
+                    throw error("unknown option: %s", args[k]);
+                }
+            }
+            if (args.length - k != 1) {
+                throw error("Usage: java enigma.Server [--port N | --unix "
+                        + "PATH] [--report SECONDS] CONFIG");
+            }
+            Server server = new Server(Main.readSpec(args[k]));
+            server.listen(address);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                server.close();
+                System.err.println(server.latencies().summary());
+            }));
+            server.startReports(report, System.err);
+            server.serve();
+        } catch (EnigmaException | NumberFormatException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** A server converting messages with machines configured by SPEC. */
+    Server(MachineSpec spec) {
+        _spec = spec;
+        _executor = newExecutor();
+    }
+
+    /** Return an executor that runs each task on a new virtual thread if
+     *  this JVM has them, and otherwise on a pooled daemon thread. */
+    static ExecutorService newExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException excp) {
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "enigma-connection");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /** Start listening for connections at ADDRESS, and return the address
+     *  actually used (with the port chosen, if ADDRESS has port 0).  A
+     *  Unix-domain socket file left at ADDRESS by a server that has
+     *  stopped is replaced; any other file there is an error. */
+    SocketAddress listen(SocketAddress address) {
+        try {
+            if (address instanceof UnixDomainSocketAddress) {
+                removeStaleSocket((UnixDomainSocketAddress) address);
+                _listener = ServerSocketChannel.open(
+                        StandardProtocolFamily.UNIX);
+                _listener.bind(address);
+                _socketFile = ((UnixDomainSocketAddress) address).getPath();
+            } else {
+                _listener = ServerSocketChannel.open();
+                _listener.bind(address);
+            }
+            return _listener.getLocalAddress();
+        } catch (IOException excp) {
+            throw error("could not listen at %s: %s", address,
+                        excp.getMessage());
+        }
+    }
+
+    /** Delete the file at ADDRESS if it is a socket that no server is
+     *  listening on, as a server that crashed leaves behind.  Throws an
+     *  EnigmaException if it is some other kind of file, or if a server
+     *  is listening on it. */
+    private static void removeStaleSocket(UnixDomainSocketAddress address)
+        throws IOException {
+        Path file = address.getPath();
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class,
+                                              LinkOption.NOFOLLOW_LINKS);
+        } catch (NoSuchFileException excp) {
+            return;
+        }
+        if (!attributes.isOther()) {
+            throw error("%s exists and is not a socket", file);
+        }
+        SocketChannel probe;
+        try {
+            probe = SocketChannel.open(address);
+        } catch (IOException excp) {
+            Files.delete(file);
+            return;
+        }
+        probe.close();
+        throw error("a server is already listening at %s", file);
+    }
+
+    /** Accept connections and serve each on its own thread until
+     *  closed. */
+    void serve() {
+        try {
+            while (true) {
+                SocketChannel connection = _listener.accept();
+                _executor.execute(() -> handle(connection));
+            }
+        } catch (ClosedChannelException excp) {
+            /* close() was called. */
+        } catch (IOException excp) {
+            throw error("could not accept connection: %s",
+                        excp.getMessage());
+        }
+    }
+
+    /** Stop accepting connections and let those being served finish. */
+    void close() {
+        try {
+            if (_listener != null) {
+                _listener.close();
+            }
+            if (_socketFile != null) {
+                Files.deleteIfExists(_socketFile);
+            }
+        } catch (IOException excp) {
+            /* Nothing more can be done. */
+        }
+        _executor.shutdown();
+        if (_reporter != null) {
+            _reporter.interrupt();
+        }
+    }
+
+    /** Return the record of the time taken to handle each line. */
+    LatencyHistogram latencies() {
+        return _latencies;
+    }
+
+    /** Start a daemon thread that prints a summary of latencies to OUT
+     *  every SECONDS seconds in which some lines were handled. */
+    void startReports(long seconds, java.io.PrintStream out) {
+        _reporter = new Thread(() -> {
+            long reported = 0;
+            try {
+                while (true) {
+                    Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+                    long count = _latencies.count();
+                    if (count != reported) {
+                        out.println(_latencies.summary());
+                        reported = count;
+                    }
+                }
+            } catch (InterruptedException excp) {
+                /* Server is closing. */
+            }
+        });
+        _reporter.setDaemon(true);
+        _reporter.start();
+    }
+
+    /** Serve CONNECTION until the client closes it. */
+    private void handle(SocketChannel connection) {
+        Machine machine = _spec.borrow();
+        boolean configured = false;
+        try (SocketChannel channel = connection;
+             BufferedReader in = new BufferedReader(new InputStreamReader(
+                     Channels.newInputStream(channel),
+                     StandardCharsets.UTF_8));
+             Writer out = new OutputStreamWriter(
+                     Channels.newOutputStream(channel),
+                     StandardCharsets.UTF_8)) {
+            StringBuilder reply = new StringBuilder();
+            String line;
+            while ((line = in.readLine()) != null) {
+                long start = System.nanoTime();
+                reply.setLength(0);
+                try {
+                    if (line.trim().startsWith("*")) {
+                        Candidate.parse(line, _spec.numRotors())
+                            .setUp(machine);
+                        configured = true;
+                    } else if (!configured) {
+                        throw error("No configuration in file. ");
+                    } else {
+                        machine.convert(line, 0, line.length(), 0, reply);
+                    }
+                } catch (EnigmaException | IndexOutOfBoundsException excp) {
+                    reply.setLength(0);
+                    reply.append("Error: ").append(excp.getMessage());
+                    configured = false;
+                }
+                reply.append('\n');
+                _latencies.record(System.nanoTime() - start);
+                out.append(reply);
+                out.flush();
+            }
+        } catch (IOException excp) {
+            /* Client went away. */
+        } finally {
+            _spec.release(machine);
+        }
+    }
+
+    /** Port listened on by main unless --port or --unix is given. */
+    static final int DEFAULT_PORT = 6161;
+
+    /** Seconds between latency reports unless --report is given. */
+    private static final long DEFAULT_REPORT = 10;
+
+    /** Configuration of the machines used. */
+    private final MachineSpec _spec;
+    /** Runs the handler of each connection. */
+    private final ExecutorService _executor;
+    /** Time taken to handle each line. */
+    private final LatencyHistogram _latencies = new LatencyHistogram();
+    /** Accepts connections. */
+    private ServerSocketChannel _listener;
+    /** The Unix-domain socket listened on, if any. */
+    private Path _socketFile;
+    /** Prints latency summaries. */
+    private Thread _reporter;
+}
@@ -0,0 +1,174 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/** The suite of all JUnit tests for the enigma server.
+ *  @author josephhayes
+ */
+public class ServerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Start a server for the small test machine listening at ADDRESS,
+     *  returning it once it is accepting connections. */
+    private Server startServer(SocketAddress address) {
+        Server server = new Server(new MachineSpec(
+                KeySearchTest.smallMachine()));
+        _address = server.listen(address);
+        Thread thread = new Thread(server::serve);
+        thread.setDaemon(true);
+        thread.start();
+        return server;
+    }
+
+    /** Send LINES to the server at _address on one connection and return
+     *  its replies, one per line. */
+    private String[] exchange(String... lines) throws IOException {
+        try (SocketChannel channel = SocketChannel.open(_address);
+             BufferedReader in = new BufferedReader(new InputStreamReader(
+                     Channels.newInputStream(channel)));
+             Writer out = new OutputStreamWriter(
+                     Channels.newOutputStream(channel))) {
+            String[] result = new String[lines.length];
+            for (int k = 0; k < lines.length; k += 1) {
+                out.write(lines[k] + "\n");
+                out.flush();
+                result[k] = in.readLine();
+            }
+            return result;
+        }
+    }
+
+    /** Address of the server being tested. */
+    private SocketAddress _address;
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkTcpServer() throws IOException {
+        Server server = startServer(new InetSocketAddress(
+                InetAddress.getLoopbackAddress(), 0));
+        Machine machine = KeySearchTest.smallMachine();
+        Candidate.parse("* R1 F2 M2 M3 BGE (AD) (CH)", 4).setUp(machine);
+        String first = machine.convert("HEAD BADGE");
+        String second = machine.convert("FACED");
+
+        String[] replies = exchange("BAD", "* R1 F2 M2 M3 BGE (AD) (CH)",
+                "HEAD BADGE", "FACED", "*  R1 F2", "CAB");
+        assertTrue(replies[0].startsWith("Error:"));
+        assertEquals("", replies[1]);
+        assertEquals(first, replies[2]);
+        assertEquals(second, replies[3]);
+        assertTrue(replies[4].startsWith("Error:"));
+        assertTrue(replies[5].startsWith("Error:"));
+
+        assertEquals(first, exchange("* R1 F2 M2 M3 BGE (AD) (CH)",
+                "HEADBADGE")[1]);
+        server.close();
+        assertEquals(8, server.latencies().count());
+    }
+
+    @Test
+    public void checkUnixServer() throws IOException {
+        Path dir = Files.createTempDirectory("enigma");
+        Path socket = dir.resolve("server.sock");
+        Server server = startServer(UnixDomainSocketAddress.of(socket));
+        Machine machine = KeySearchTest.smallMachine();
+        Candidate.parse("* R2 F1 M3 M1 CHB", 4).setUp(machine);
+        assertEquals(machine.convert("ABCDEFGH"),
+                exchange("* R2 F1 M3 M1 CHB", "ABCDEFGH")[1]);
+        server.close();
+        assertFalse(Files.exists(socket));
+        Files.delete(dir);
+    }
+
+    @Test
+    public void checkUnixStaleSocket() throws IOException {
+        Path dir = Files.createTempDirectory("enigma");
+        Path socket = dir.resolve("server.sock");
+        try (ServerSocketChannel crashed = ServerSocketChannel.open(
+                 StandardProtocolFamily.UNIX)) {
+            crashed.bind(UnixDomainSocketAddress.of(socket));
+        }
+        assertTrue(Files.exists(socket));
+        Server server = startServer(UnixDomainSocketAddress.of(socket));
+        Machine machine = KeySearchTest.smallMachine();
+        Candidate.parse("* R2 F1 M3 M1 CHB", 4).setUp(machine);
+        assertEquals(machine.convert("ABCDEFGH"),
+                exchange("* R2 F1 M3 M1 CHB", "ABCDEFGH")[1]);
+        server.close();
+        Files.delete(dir);
+    }
+
+    @Test
+    public void checkUnixSocketInUse() throws IOException {
+        Path dir = Files.createTempDirectory("enigma");
+        Path socket = dir.resolve("server.sock");
+        Server server = startServer(UnixDomainSocketAddress.of(socket));
+        try {
+            new Server(new MachineSpec(KeySearchTest.smallMachine()))
+                .listen(UnixDomainSocketAddress.of(socket));
+            fail("listened on a socket in use");
+        } catch (EnigmaException excp) {
+            assertTrue(Files.exists(socket));
+        }
+        server.close();
+        Files.delete(dir);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkUnixNotSocket() throws IOException {
+        Path file = Files.createTempFile("enigma", ".txt");
+        try {
+            new Server(new MachineSpec(KeySearchTest.smallMachine()))
+                .listen(UnixDomainSocketAddress.of(file));
+        } finally {
+            assertTrue(Files.exists(file));
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void checkLatencyHistogram() {
+        LatencyHistogram latencies = new LatencyHistogram();
+        assertEquals(0, latencies.percentile(0.5));
+        for (long nanos = 1; nanos <= 1000; nanos += 1) {
+            latencies.record(nanos * 1000);
+        }
+        assertEquals(1000, latencies.count());
+        assertEquals(500_000, latencies.percentile(0.5), 500_000 / 16);
+        assertEquals(990_000, latencies.percentile(0.99), 990_000 / 16);
+        assertTrue(latencies.percentile(1.0) >= 1_000_000);
+        for (long nanos : new long[] {0, 1, 15, 16, 17, 1000, 1L << 40,
+                                      Long.MAX_VALUE}) {
+            int bucket = LatencyHistogram.bucket(nanos);
+            assertTrue(LatencyHistogram.highest(bucket) >= nanos);
+            assertTrue(bucket == 0
+                    || LatencyHistogram.highest(bucket - 1) < nanos);
+        }
+    }
+
+}
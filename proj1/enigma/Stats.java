@@ -0,0 +1,247 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/** Counters and timers of the work done by enigma.Main, so that one can
+ *  tell whether it is limited by reading, setting up, converting or
+ *  writing.  Main keeps a Stats only when asked to, and otherwise pays
+ *  nothing but a null test per line or block.  The counts are updated
+ *  by the one thread that runs Main, and may be read at any time by
+ *  others: the thread printing periodic reports, or JMX clients once
+ *  register() has been called.  close() stops both, so that Main may
+ *  keep Stats for several runs in one JVM.
+ *  @author josephhayes
+ */
+class Stats implements StatsMBean {
+
+    /** Record that reading the configuration took NANOS nanoseconds. */
+    void configRead(long nanos) {
+        _configNanos += nanos;
+    }
+
+    /** Record that applying a settings line took NANOS nanoseconds. */
+    void setUp(long nanos) {
+        _settingChanges += 1;
+        _setUpNanos += nanos;
+    }
+
+    /** Record the end of a message line. */
+    void message() {
+        _messages += 1;
+    }
+
+    /** Return the current time, to be passed to converted() once a
+     *  conversion (which may write output) is done. */
+    long start() {
+        _outputMark = _outputNanos;
+        return System.nanoTime();
+    }
+
+    /** Record the conversion of CHARS characters begun at time START,
+     *  as returned by start(), less any time spent writing output since
+     *  then. */
+    void converted(long chars, long start) {
+        long elapsed = System.nanoTime() - start;
+        _characters += chars;
+        _convertNanos += elapsed - (_outputNanos - _outputMark);
+    }
+
+    /** Record that writing output took NANOS nanoseconds. */
+    void output(long nanos) {
+        _outputNanos += nanos;
+    }
+
+    /** Return a Reader that reads from IN, adding the time taken to my
+     *  input time. */
+    Reader timed(Reader in) {
+        return new Reader() {
+            @Override
+            public int read(char[] buffer, int start, int len)
+                throws IOException {
+                long t0 = System.nanoTime();
+                try {
+                    return in.read(buffer, start, len);
+                } finally {
+                    _inputNanos += System.nanoTime() - t0;
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                in.close();
+            }
+        };
+    }
+
+    /** Return a Writer that writes to OUT, adding the time taken to my
+     *  output time. */
+    Writer timed(Writer out) {
+        return new Writer() {
+            @Override
+            public void write(char[] buffer, int start, int len)
+                throws IOException {
+                long t0 = System.nanoTime();
+                try {
+                    out.write(buffer, start, len);
+                } finally {
+                    output(System.nanoTime() - t0);
+                }
+            }
+
+            @Override
+            public void write(int c) throws IOException {
+                long t0 = System.nanoTime();
+                try {
+                    out.write(c);
+                } finally {
+                    output(System.nanoTime() - t0);
+                }
+            }
+
+            @Override
+            public void flush() throws IOException {
+                long t0 = System.nanoTime();
+                try {
+                    out.flush();
+                } finally {
+                    output(System.nanoTime() - t0);
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                out.close();
+            }
+        };
+    }
+
+    /** Make me readable over JMX as enigma:type=Stats. */
+    void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer()
+                .registerMBean(this, new ObjectName(OBJECT_NAME));
+            _registered = true;
+        } catch (JMException excp) {
+            /* Statistics are still printed. */
+        }
+    }
+
+    /** Start a daemon thread that prints my summary to OUT every SECONDS
+     *  seconds. */
+    void startReports(long seconds, PrintStream out) {
+        _reporter = new Thread(() -> {
+            try {
+                while (true) {
+                    Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+                    out.println(getSummary());
+                }
+            } catch (InterruptedException excp) {
+                /* Stopped by close(). */
+            }
+        }, "enigma-stats");
+        _reporter.setDaemon(true);
+        _reporter.start();
+    }
+
+    /** Stop the reports started by startReports, waiting for the thread
+     *  printing them to end, and withdraw me from JMX if register() made
+     *  me visible there. */
+    void close() {
+        if (_reporter != null) {
+            _reporter.interrupt();
+            try {
+                _reporter.join();
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+            }
+            _reporter = null;
+        }
+        if (_registered) {
+            try {
+                ManagementFactory.getPlatformMBeanServer()
+                    .unregisterMBean(new ObjectName(OBJECT_NAME));
+            } catch (JMException excp) {
+                /* Already withdrawn. */
+            }
+            _registered = false;
+        }
+    }
+
+    @Override
+    public long getCharacters() {
+        return _characters;
+    }
+
+    @Override
+    public double getCharactersPerSecond() {
+        long nanos = _convertNanos;
+        return nanos == 0 ? 0 : _characters * 1e9 / nanos;
+    }
+
+    @Override
+    public long getMessages() {
+        return _messages;
+    }
+
+    @Override
+    public long getSettingChanges() {
+        return _settingChanges;
+    }
+
+    @Override
+    public long getConfigNanos() {
+        return _configNanos;
+    }
+
+    @Override
+    public long getInputNanos() {
+        return _inputNanos;
+    }
+
+    @Override
+    public long getSetUpNanos() {
+        return _setUpNanos;
+    }
+
+    @Override
+    public long getConvertNanos() {
+        return _convertNanos;
+    }
+
+    @Override
+    public long getOutputNanos() {
+        return _outputNanos;
+    }
+
+    @Override
+    public String getSummary() {
+        return String.format("stats: %d chars (%.1f Mchar/s), %d messages,"
+                + " %d settings; ms in config %.1f, input %.1f, setup %.1f,"
+                + " convert %.1f, output %.1f", _characters,
+                getCharactersPerSecond() * 1e-6, _messages, _settingChanges,
+                _configNanos * 1e-6, _inputNanos * 1e-6, _setUpNanos * 1e-6,
+                _convertNanos * 1e-6, _outputNanos * 1e-6);
+    }
+
+    /** Name under which register() makes me visible. */
+    static final String OBJECT_NAME = "enigma:type=Stats";
+
+    /** Counts of characters, message lines and settings lines. */
+    private volatile long _characters, _messages, _settingChanges;
+    /** Times spent in each activity. */
+    private volatile long _configNanos, _inputNanos, _setUpNanos,
+        _convertNanos, _outputNanos;
+    /** _outputNanos at the last call to start(). */
+    private long _outputMark;
+    /** The thread printing periodic reports, if any. */
+    private Thread _reporter;
+    /** True iff register() made me visible over JMX. */
+    private boolean _registered;
+}
@@ -0,0 +1,40 @@
+package enigma;
+
+/** The management interface of Stats, through which the counters and
+ *  timers of a running enigma.Main can be read over JMX.  Times are in
+ *  nanoseconds.
+ *  @author josephhayes
+ */
+public interface StatsMBean {
+
+    /** Return the number of characters converted. */
+    long getCharacters();
+
+    /** Return the average number of characters converted per second of
+     *  conversion time. */
+    double getCharactersPerSecond();
+
+    /** Return the number of message lines finished. */
+    long getMessages();
+
+    /** Return the number of settings lines applied. */
+    long getSettingChanges();
+
+    /** Return the time spent reading the configuration. */
+    long getConfigNanos();
+
+    /** Return the time spent reading input. */
+    long getInputNanos();
+
+    /** Return the time spent applying settings lines. */
+    long getSetUpNanos();
+
+    /** Return the time spent converting, not counting output. */
+    long getConvertNanos();
+
+    /** Return the time spent writing output. */
+    long getOutputNanos();
+
+    /** Return a one-line summary of all the above. */
+    String getSummary();
+}
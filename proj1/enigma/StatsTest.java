@@ -0,0 +1,105 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/** The suite of all JUnit tests for the Stats class.
+ *  @author josephhayes
+ */
+public class StatsTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    @Test
+    public void checkStats() throws Exception {
+        Stats stats = new Stats();
+        Writer slow = stats.timed(new StringWriter() {
+            @Override
+            public void write(char[] buffer, int start, int len) {
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException excp) {
+                    throw new AssertionError(excp);
+                }
+                super.write(buffer, start, len);
+            }
+        });
+        long start = stats.start();
+        slow.write("HELLO");
+        stats.converted(5, start);
+        stats.message();
+        stats.setUp(1000);
+        assertEquals(5, stats.getCharacters());
+        assertEquals(1, stats.getMessages());
+        assertEquals(1, stats.getSettingChanges());
+        assertEquals(1000, stats.getSetUpNanos());
+        assertTrue(stats.getOutputNanos() >= 20_000_000);
+        assertTrue(stats.getConvertNanos() < stats.getOutputNanos());
+        assertTrue(stats.getSummary().startsWith("stats: 5 chars"));
+
+        stats.register();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(Stats.OBJECT_NAME);
+        try {
+            assertEquals(5L, server.getAttribute(name, "Characters"));
+        } finally {
+            stats.close();
+        }
+        assertFalse(server.isRegistered(name));
+    }
+
+    /** Return true iff a thread named NAME is alive. */
+    private static boolean running(String name) {
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals(name) && thread.isAlive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void checkMainRunStats() throws Exception {
+        Path config = Files.createTempFile("enigma", ".conf");
+        Path input = Files.createTempFile("enigma", ".inp");
+        Path output = Files.createTempFile("enigma", ".out");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(Stats.OBJECT_NAME);
+        PrintStream err = System.err;
+        try {
+            Files.write(config, ("H-Q\n3 2\nRF R (HI) (JK) (LM) (NO) (PQ)\n"
+                    + "\nROT1 MJ (HIJK) (LMNOPQ)\nROT2 MN (IHKJMLONQP)\n")
+                    .getBytes());
+            Files.write(input, "* RF ROT1 ROT2 HQ\nHIJ KLM\n".getBytes());
+            System.setErr(new PrintStream(new ByteArrayOutputStream()));
+            for (int k = 0; k < 2; k += 1) {
+                Main.run("--stats", "1", config.toString(), input.toString(),
+                         output.toString());
+                assertEquals(6, new String(Files.readAllBytes(output))
+                             .replaceAll("\\s", "").length());
+                assertFalse(server.isRegistered(name));
+                assertFalse(running("enigma-stats"));
+            }
+        } finally {
+            System.setErr(err);
+            Files.delete(config);
+            Files.delete(input);
+            Files.delete(output);
+        }
+    }
+
+}
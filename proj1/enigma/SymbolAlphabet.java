@@ -0,0 +1,81 @@
+package enigma;
+
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** An Alphabet consisting of an arbitrary list of distinct characters
+ *  (letters, digits, punctuation or any other Unicode characters) in a
+ *  given order.  Characters are mapped to indices by a table covering the
+ *  range from the smallest to the largest symbol, so that toInt takes
+ *  constant time however large the alphabet.
+ *  @author josephhayes
+ */
+class SymbolAlphabet extends Alphabet {
+
+    /** An alphabet consisting of the characters of SYMBOLS, in order.
+     *  SYMBOLS must be non-empty and contain no character twice. */
+    SymbolAlphabet(String symbols) {
+        if (symbols.isEmpty()) {
+            throw error("empty alphabet");
+        }
+        _symbols = symbols.toCharArray();
+        char low = _symbols[0], high = _symbols[0];
+        for (char ch : _symbols) {
+            low = (char) Math.min(low, ch);
+            high = (char) Math.max(high, ch);
+        }
+        _low = low;
+        _index = new int[high - low + 1];
+        Arrays.fill(_index, -1);
+        for (int i = 0; i < _symbols.length; i += 1) {
+            int slot = _symbols[i] - low;
+            if (_index[slot] >= 0) {
+                throw error("character '%c' appears twice in alphabet",
+                            _symbols[i]);
+            }
+            _index[slot] = i;
+        }
+    }
+
+    @Override
+    int size() {
+        return _symbols.length;
+    }
+
+    @Override
+    boolean contains(char ch) {
+        return indexOf(ch) >= 0;
+    }
+
+    @Override
+    char toChar(int index) {
+        if (index < 0 || index >= _symbols.length) {
+            throw error("character index out of range");
+        }
+        return _symbols[index];
+    }
+
+    @Override
+    int toInt(char ch) {
+        int result = indexOf(ch);
+        if (result < 0) {
+            throw error("character out of range");
+        }
+        return result;
+    }
+
+    @Override
+    int indexOf(char ch) {
+        int slot = ch - _low;
+        return slot >= 0 && slot < _index.length ? _index[slot] : -1;
+    }
+
+    /** The characters of this alphabet, in order. */
+    private final char[] _symbols;
+    /** The smallest character in this alphabet. */
+    private final char _low;
+    /** _index[C - _low] is the index of character C, or -1 if C is not
+     *  in this alphabet. */
+    private final int[] _index;
+}
@@ -22,7 +22,8 @@ public class UnitTest {
      */
     public static void main(String[] ignored) {
         textui.runClasses(PermutationTest.class, MovingRotorTest.class,
-                MachineTest.class, MoreEnigmaTests.class);
+                MachineTest.class, MoreEnigmaTests.class,
+                KeySearchTest.class, ServerTest.class, StatsTest.class);
     }
 
     private Scanner getInput(String name) {
@@ -1,7 +1,8 @@
 package amazons;
 
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.Stack;
 import java.util.Collections;
 
@@ -10,7 +11,10 @@ import static amazons.Piece.*;
 
 
 /**
- * The state of an Amazons Game.
+ * The state of an Amazons Game.  The contents of the board are kept as
+ * bitboards: for each of WHITE, BLACK and SPEAR, a set of the indices of
+ * the squares holding it, with indices 0-63 in one long and 64-99 in
+ * another.
  *
  * @author JosephHayes
  */
@@ -42,8 +46,8 @@ class Board {
     void copy(Board model) {
 
         this._turn = model.turn();
-        this._gameBoard = new HashMap<Square, Piece>(model._gameBoard);
-        this._gameBoard.putAll(model._gameBoard);
+        this._low = model._low.clone();
+        this._high = model._high.clone();
         this._moves = model._moves;
         this._winner = model.winner();
         this._numMoves = model.numMoves();
@@ -53,7 +57,8 @@ class Board {
      * Clears the board to the initial position.
      */
     void init() {
-        _gameBoard = new HashMap<>();
+        Arrays.fill(_low, 0);
+        Arrays.fill(_high, 0);
 
         buildBoard(IteratorTests.REACHABLEFROMINITBOARD);
 
@@ -65,7 +70,7 @@ class Board {
     /** Returns the size of this board. */
 
     int boardSize() {
-        return _gameBoard.size();
+        return SIZE * SIZE;
     }
 
     /** Builds board according to 2D array TARGET. Taken from IteratorTests.
@@ -141,7 +146,18 @@ class Board {
      * Return the contents the square at S.
      */
     final Piece get(Square s) {
-        return _gameBoard.get(s);
+        if (s == null) {
+            return null;
+        }
+        int index = s.index();
+        long[] half = index < Long.SIZE ? _low : _high;
+        long bit = bit(index);
+        for (Piece p : PLACED) {
+            if ((half[p.ordinal()] & bit) != 0) {
+                return p;
+            }
+        }
+        return EMPTY;
     }
 
     /**
@@ -149,7 +165,7 @@ class Board {
      * 0 <= COL, ROW <= 9.
      */
     final Piece get(int col, int row) {
-        return _gameBoard.get(Square.sq(col, row));
+        return get(Square.sq(col, row));
     }
 
     /**
@@ -164,14 +180,25 @@ class Board {
      * Set square S to P.
      */
     final void put(Piece p, Square s) {
-        _gameBoard.put(s, p);
+        if (s == null) {
+            return;
+        }
+        int index = s.index();
+        long[] half = index < Long.SIZE ? _low : _high;
+        long bit = bit(index);
+        for (Piece q : PLACED) {
+            half[q.ordinal()] &= ~bit;
+        }
+        if (p != EMPTY) {
+            half[p.ordinal()] |= bit;
+        }
     }
 
     /**
      * Set square (COL, ROW) to P.
      */
     final void put(Piece p, int col, int row) {
-        _gameBoard.put(Square.sq(col, row), p);
+        put(p, Square.sq(col, row));
         _winner = null;
     }
 
@@ -182,6 +209,24 @@ class Board {
         put(p, col - 'a', row - '1');
     }
 
+    /**
+     * Return true iff S holds a piece or spear.
+     */
+    private boolean occupied(Square s) {
+        int index = s.index();
+        long[] half = index < Long.SIZE ? _low : _high;
+        return ((half[WHITE.ordinal()] | half[BLACK.ordinal()]
+                 | half[SPEAR.ordinal()]) & bit(index)) != 0;
+    }
+
+    /**
+     * Return the bit standing for the square with index INDEX in its half
+     * of a bitboard.
+     */
+    private static long bit(int index) {
+        return 1L << (index % Long.SIZE);
+    }
+
     /**
      * Return true iff FROM - TO is an unblocked queen move on the current
      * board, ignoring the contents of ASEMPTY, if it is encountered.
@@ -210,7 +255,7 @@ class Board {
         for (int i = 1; i <= steps; i++) {
             Square visitor = from.queenMove(direction, i);
 
-            if (get(visitor) != EMPTY && !visitor.equals(asEmpty)) {
+            if (occupied(visitor) && visitor != asEmpty) {
                 return false;
             } else if (visitor == to) {
                 return true;
@@ -361,14 +406,16 @@ class Board {
 
         /**
          * Advance _dir and _steps, so that the next VALID Square is
-         * _steps steps in direction _dir from _from.
+         * _steps steps in direction _dir from _from.  Squares are visited
+         * outward from _from, so a direction is finished at the first
+         * occupied square in it.
          */
         private void toNext() {
             _steps++;
 
             _next = _from.queenMove(_dir, _steps);
 
-            while (_next == null || !isUnblockedMove(_from, _next, _asEmpty)
+            while (_next == null || occupied(_next) && _next != _asEmpty
                     && hasNext()) {
                 _dir++;
                 _steps = 1;
@@ -412,7 +459,8 @@ class Board {
         LegalMoveIterator(Piece side) {
 
             _fromPiece = side;
-            _startingSquares = Square.iterator();
+            _startingSquares = new SquareSetIterator(_low[side.ordinal()],
+                                                     _high[side.ordinal()]);
             _pieceMoves = NO_SQUARES;
             _spearThrows = NO_SQUARES;
 
@@ -448,10 +496,7 @@ class Board {
                     _spearThrows = reachableFrom(_nextSquare, _start);
                 } else if (_startingSquares.hasNext()) {
                     _start = _startingSquares.next();
-
-                    if (get(_start) == _fromPiece) {
-                        _pieceMoves = reachableFrom(_start, null);
-                    }
+                    _pieceMoves = reachableFrom(_start, null);
                 } else {
                     break;
                 }
@@ -479,7 +524,7 @@ class Board {
         private Square _nextSquare;
 
         /**
-         * Remaining starting squares to consider.
+         * Remaining squares of _fromPiece to consider, in order of index.
          */
         private Iterator<Square> _startingSquares;
 
@@ -493,6 +538,46 @@ class Board {
         private Iterator<Square> _spearThrows;
     }
 
+    /**
+     * An iterator over the squares in a bitboard, in order of index.
+     */
+    private static class SquareSetIterator implements Iterator<Square> {
+
+        /**
+         * Iterator over the squares whose bits are set in LOW (indices
+         * 0-63) and HIGH (indices 64 and up).
+         */
+        SquareSetIterator(long low, long high) {
+            _lowLeft = low;
+            _highLeft = high;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return _lowLeft != 0 || _highLeft != 0;
+        }
+
+        @Override
+        public Square next() {
+            int index;
+            if (_lowLeft != 0) {
+                index = Long.numberOfTrailingZeros(_lowLeft);
+                _lowLeft &= _lowLeft - 1;
+            } else if (_highLeft != 0) {
+                index = Long.SIZE + Long.numberOfTrailingZeros(_highLeft);
+                _highLeft &= _highLeft - 1;
+            } else {
+                throw new NoSuchElementException();
+            }
+            return Square.sq(index);
+        }
+
+        /**
+         * Bits of the squares not yet returned.
+         */
+        private long _lowLeft, _highLeft;
+    }
+
     @Override
     public String toString() {
         String boardString = "";
@@ -501,14 +586,7 @@ class Board {
             boardString = boardString + "   ";
 
             for (int col = 0; col < SIZE; col++) {
-                Square position = Square.sq(col, row);
-
-                if (!_gameBoard.containsKey(position) && col == 9) {
-                    boardString += EMPTY;
-                    boardString += "\n";
-                } else if (!_gameBoard.containsKey(position)) {
-                    boardString += EMPTY + " ";
-                } else if (col == 9) {
+                if (col == 9) {
                     boardString += get(col, row).toString();
                     boardString += "\n";
                 } else {
@@ -521,6 +599,11 @@ class Board {
     }
 
 
+    /**
+     * The kinds of piece kept in bitboards.
+     */
+    private static final Piece[] PLACED = {WHITE, BLACK, SPEAR};
+
     /**
      * An empty iterator for initialization.
      */
@@ -536,8 +619,14 @@ class Board {
      * computed.
      */
     private Piece _winner;
-    /** A hashmap of all the squares for this board and their contents. */
-    private HashMap<Square, Piece> _gameBoard;
+    /**
+     * Bitboards of the squares holding each kind of piece, indexed by
+     * ordinal: bit I of _low[P] is set iff the square with index I holds
+     * P, and bit I of _high[P] likewise for the square with index 64 + I.
+     * The entries for EMPTY are always 0.
+     */
+    private long[] _low = new long[Piece.values().length],
+        _high = new long[Piece.values().length];
     /** A stack list of all the moves performed on this board. */
     private Stack<Move> _moves;
     /** The number of moves performed on this board. */
@@ -384,6 +384,68 @@ public class UnitTest {
     }
 
 
+    /**
+     * Tests that pieces are kept apart on both halves of the bitboards,
+     * that copies are independent, and that legalMoves finds exactly the
+     * legal moves.
+     */
+    @Test
+    public void testBitboards() {
+        Board b = new Board();
+        for (int i = 0; i < Board.SIZE * Board.SIZE; i += 1) {
+            b.put(EMPTY, Square.sq(i));
+        }
+        b.put(WHITE, Square.sq(63));
+        b.put(BLACK, Square.sq(64));
+        b.put(SPEAR, Square.sq(0));
+        b.put(WHITE, Square.sq(99));
+        b.put(BLACK, Square.sq(65));
+        b.put(SPEAR, Square.sq(65));
+        assertEquals(WHITE, b.get(Square.sq(63)));
+        assertEquals(BLACK, b.get(Square.sq(64)));
+        assertEquals(SPEAR, b.get(Square.sq(0)));
+        assertEquals(WHITE, b.get(Square.sq(99)));
+        assertEquals(SPEAR, b.get(Square.sq(65)));
+        assertEquals(EMPTY, b.get(Square.sq(1)));
+        assertNull(b.get(null));
+
+        Board copy = new Board(b);
+        copy.put(EMPTY, Square.sq(64));
+        assertEquals(BLACK, b.get(Square.sq(64)));
+        assertEquals(EMPTY, copy.get(Square.sq(64)));
+
+        for (Piece side : new Piece[] {WHITE, BLACK}) {
+            int count = 0;
+            java.util.Iterator<Move> moves = b.legalMoves(side);
+            while (moves.hasNext()) {
+                Move m = moves.next();
+                assertEquals(side, b.get(m.from()));
+                assertTrue(b.isUnblockedMove(m.from(), m.to(), null));
+                assertTrue(b.isUnblockedMove(m.to(), m.spear(), m.from()));
+                count += 1;
+            }
+            int expected = 0;
+            for (int from = 0; from < 100; from += 1) {
+                if (b.get(Square.sq(from)) != side) {
+                    continue;
+                }
+                for (int to = 0; to < 100; to += 1) {
+                    if (!b.isUnblockedMove(Square.sq(from), Square.sq(to),
+                                           null)) {
+                        continue;
+                    }
+                    for (int spear = 0; spear < 100; spear += 1) {
+                        if (b.isUnblockedMove(Square.sq(to),
+                                Square.sq(spear), Square.sq(from))) {
+                            expected += 1;
+                        }
+                    }
+                }
+            }
+            assertEquals(expected, count);
+        }
+    }
+
     static final String INIT_BOARD_STATE =
             "   - - - B - - B - - -\n"
                     + "   - - - - - - - - - -\n"